@@ -6,6 +6,7 @@ import org.apache.commons.lang3.text.WordUtils;
 import java.awt.*;
 import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.Map;
 
 public class Config
 {
@@ -68,6 +69,10 @@ public class Config
 
 		NOISE_SCALE(Section.WORLD, KeyType.DOUBLE),
 		MINIMUM_VERTICES(Section.WORLD, KeyType.INTEGER),
+		VERTEX_EPSILON(Section.WORLD, KeyType.DOUBLE),
+		GENERATION_TILES(Section.WORLD, KeyType.INTEGER, "Generation Tiles Per Side"),
+		DENSITY_RESOLUTION(Section.WORLD, KeyType.DOUBLE),
+		FLOAT_NOISE(Section.WORLD, KeyType.BOOLEAN),
 
 		RENDER_NOISE(Section.RENDER, KeyType.BOOLEAN),
 		VERTEX_RENDER_RADIUS(Section.RENDER, KeyType.INTEGER, "Vertex Radius"),
@@ -139,6 +144,10 @@ public class Config
 
 		configMap.put(Key.MINIMUM_VERTICES, 100);
 		configMap.put(Key.NOISE_SCALE, 100.0);
+		configMap.put(Key.VERTEX_EPSILON, 0.001);
+		configMap.put(Key.GENERATION_TILES, 1);
+		configMap.put(Key.DENSITY_RESOLUTION, 2.0);
+		configMap.put(Key.FLOAT_NOISE, false);
 		configMap.put(Key.RENDER_NOISE, false);
 		configMap.put(Key.VERTEX_RENDER_RADIUS, 1);
 		configMap.put(Key.VERTEX_RENDER_COLOUR, Color.CYAN);
@@ -182,6 +191,25 @@ public class Config
 		return val;
 	}
 
+	/**
+	 * @return A hash of every setting, which changes when any of them does
+	 */
+	public static long hash()
+	{
+		long hash = 17;
+		for (Map.Entry<Key, Object> entry : INSTANCE.configMap.entrySet())
+		{
+			hash = hash * 0x9E3779B97F4A7C15L + entry.getKey().ordinal();
+			hash = hash * 0x9E3779B97F4A7C15L + entry.getValue().hashCode();
+		}
+
+		// spread changes into the low bits too
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
 	public static void set(Key key, Object value)
 	{
 		INSTANCE.configMap.put(key, value);
@@ -1,66 +1,52 @@
 package ms.domwillia.city;
 
 
-import ms.domwillia.city.graph.Graph;
-import ms.domwillia.city.generator.Density;
-import ms.domwillia.city.generator.Generator;
+import ms.domwillia.city.batch.BatchGenerator;
+import ms.domwillia.city.batch.BatchJob;
+import ms.domwillia.city.batch.BatchPipeline;
+import ms.domwillia.city.batch.BatchSummary;
+import ms.domwillia.city.generator.GeneratorSettings;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main
 {
+	private static final String DIR = "/tmp/road-renders";
+	private static final String FORMAT = "render-%d.png";
+
+	/**
+	 * Usage: [--pipeline] [city count] [thread count] [seed]
+	 */
 	public static void main(String[] args)
 	{
-		int THREAD_COUNT = 4;
-		int TASKS_PER_THREAD = 3;
+		boolean pipeline = args.length > 0 && args[0].equals("--pipeline");
+		if (pipeline)
+			args = Arrays.copyOfRange(args, 1, args.length);
+
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
 
-		Thread[] threads = new Thread[THREAD_COUNT];
 		int width = Config.getInt(Config.Key.WORLD_WIDTH);
 		int height = Config.getInt(Config.Key.WORLD_HEIGHT);
-		for (int i = 0; i < threads.length; i++)
-		{
-			threads[i] = new Thread(new GeneratorRunnable(width, height, TASKS_PER_THREAD, TASKS_PER_THREAD*i));
-			threads[i].start();
-		}
-		for (Thread thread : threads)
-			try
-			{
-				thread.join();
-			} catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
-	}
+		GeneratorSettings settings = GeneratorSettings.fromConfig();
 
-	static class GeneratorRunnable implements Runnable
-	{
-		private static final String DIR = "/tmp/road-renders";
-		private static final String FORMAT = "render-%d.png";
-
-		private final int width;
-		private final int height;
-		private final int count;
-		private int startIndex;
+		List<BatchJob> jobs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			jobs.add(new BatchJob(seed + i, width, height, settings, new File(DIR, String.format(FORMAT, i))));
 
-		GeneratorRunnable(int width, int height, int count, int startIndex)
+		BatchSummary summary;
+		if (pipeline)
 		{
-			this.width = width;
-			this.height = height;
-			this.count = count;
-			this.startIndex = startIndex;
-		}
-
-		@Override
-		public void run()
-		{
-			for (int i = 0; i < count; i++)
-			{
-				Density.reseed();
-				Graph graph = new Graph(width, height);
-				Generator g = new Generator(graph);
-
-				g.generate();
+			// generation is the slowest stage, so give it the most threads
+			int others = Math.max(1, threads / 2);
+			summary = new BatchPipeline(threads, others, others, threads).run(jobs);
+		} else
+			summary = new BatchGenerator(threads).run(jobs);
 
-				graph.export(DIR, FORMAT, startIndex++);
-			}
-		}
+		System.out.println(summary);
 	}
 }
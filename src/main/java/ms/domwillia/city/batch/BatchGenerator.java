@@ -0,0 +1,83 @@
+package ms.domwillia.city.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Generates and exports many cities on a work-stealing pool, so a slow city only holds up its own
+ * worker while the others carry on with the rest of the queue
+ */
+public class BatchGenerator
+{
+	private final int parallelism;
+
+	public BatchGenerator()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BatchGenerator(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+
+		this.parallelism = parallelism;
+	}
+
+	public BatchSummary run(List<BatchJob> jobs)
+	{
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			List<Callable<Long>> tasks = new ArrayList<>(jobs.size());
+			for (BatchJob job : jobs)
+				tasks.add(() -> runJob(job));
+
+			long start = System.nanoTime();
+			List<Future<Long>> futures = pool.invokeAll(tasks);
+
+			long[] latencies = new long[futures.size()];
+			int completed = 0;
+			int failed = 0;
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					latencies[completed] = futures.get(i).get();
+					completed++;
+				} catch (ExecutionException e)
+				{
+					failed++;
+					System.err.printf("Failed to generate %s: %s\n", jobs.get(i), e.getCause());
+				}
+			}
+
+			long elapsed = System.nanoTime() - start;
+			return new BatchSummary(failed, elapsed, Arrays.copyOf(latencies, completed));
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running batch", e);
+		} finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return Time taken in nanoseconds
+	 */
+	private static long runJob(BatchJob job)
+	{
+		long start = System.nanoTime();
+
+		job.generate().export(job.getOutput());
+
+		return System.nanoTime() - start;
+	}
+}
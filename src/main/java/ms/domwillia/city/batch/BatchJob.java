@@ -0,0 +1,68 @@
+package ms.domwillia.city.batch;
+
+import ms.domwillia.city.generator.Generator;
+import ms.domwillia.city.generator.GeneratorSettings;
+import ms.domwillia.city.graph.Graph;
+
+import java.io.File;
+
+/**
+ * A single city to generate and export as part of a batch
+ */
+public class BatchJob
+{
+	private final long seed;
+	private final int width, height;
+	private final GeneratorSettings settings;
+	private final File output;
+
+	public BatchJob(long seed, int width, int height, GeneratorSettings settings, File output)
+	{
+		this.seed = seed;
+		this.width = width;
+		this.height = height;
+		this.settings = settings;
+		this.output = output;
+	}
+
+	Graph generate()
+	{
+		Graph graph = new Graph(0, 0, width, height, settings.getVertexEpsilon(), settings.getMaxMergeThreshold());
+		new Generator(graph, seed, settings).generate();
+		return graph;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public GeneratorSettings getSettings()
+	{
+		return settings;
+	}
+
+	public File getOutput()
+	{
+		return output;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BatchJob{" +
+			"seed=" + seed +
+			", output=" + output +
+			'}';
+	}
+}
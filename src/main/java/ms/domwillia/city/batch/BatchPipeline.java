@@ -0,0 +1,190 @@
+package ms.domwillia.city.batch;
+
+import ms.domwillia.city.graph.Graph;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates, renders and exports cities in three stages, each with its own threads, connected by
+ * bounded queues. A full queue blocks the stage feeding it, so at most
+ * {@code renderers + queueCapacity + encoders} rendered images are alive at once
+ */
+public class BatchPipeline
+{
+	private static final Work POISON = new Work(null, 0);
+
+	private final int generators;
+	private final int renderers;
+	private final int encoders;
+	private final int queueCapacity;
+
+	public BatchPipeline(int generators, int renderers, int encoders, int queueCapacity)
+	{
+		if (generators < 1 || renderers < 1 || encoders < 1 || queueCapacity < 1)
+			throw new IllegalArgumentException("Invalid pipeline size");
+
+		this.generators = generators;
+		this.renderers = renderers;
+		this.encoders = encoders;
+		this.queueCapacity = queueCapacity;
+	}
+
+	public BatchSummary run(List<BatchJob> jobs)
+	{
+		BlockingQueue<Work> toRender = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Work> toEncode = new ArrayBlockingQueue<>(queueCapacity);
+
+		AtomicInteger nextJob = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		long[] latencies = new long[jobs.size()];
+		AtomicInteger completed = new AtomicInteger();
+
+		long start = System.nanoTime();
+
+		List<Thread> generateStage = startStage("generate", generators, () ->
+		{
+			int i;
+			while ((i = nextJob.getAndIncrement()) < jobs.size())
+			{
+				Work work = new Work(jobs.get(i), System.nanoTime());
+				try
+				{
+					work.graph = work.job.generate();
+				} catch (Throwable e)
+				{
+					fail(work, e, failed);
+					continue;
+				}
+
+				toRender.put(work);
+			}
+		});
+
+		List<Thread> renderStage = startStage("render", renderers, () ->
+		{
+			Work work;
+			while ((work = toRender.take()) != POISON)
+			{
+				try
+				{
+					work.image = work.graph.render();
+					work.graph = null;
+				} catch (Throwable e)
+				{
+					fail(work, e, failed);
+					continue;
+				}
+
+				toEncode.put(work);
+			}
+		});
+
+		List<Thread> encodeStage = startStage("encode", encoders, () ->
+		{
+			Work work;
+			while ((work = toEncode.take()) != POISON)
+			{
+				try
+				{
+					Graph.exportImage(work.image, work.job.getOutput());
+				} catch (Throwable e)
+				{
+					fail(work, e, failed);
+					continue;
+				}
+
+				latencies[completed.getAndIncrement()] = System.nanoTime() - work.start;
+			}
+		});
+
+		try
+		{
+			// each stage is finished once the one before it has finished and it has drained its queue
+			join(generateStage);
+			for (int i = 0; i < renderers; i++)
+				toRender.put(POISON);
+
+			join(renderStage);
+			for (int i = 0; i < encoders; i++)
+				toEncode.put(POISON);
+
+			join(encodeStage);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			for (List<Thread> stage : Arrays.asList(generateStage, renderStage, encodeStage))
+				stage.forEach(Thread::interrupt);
+
+			throw new IllegalStateException("Interrupted while running pipeline", e);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		return new BatchSummary(failed.get(), elapsed, Arrays.copyOf(latencies, completed.get()));
+	}
+
+	/**
+	 * Counts the job as failed. Stages catch anything a job throws, errors included, as a stage thread
+	 * that died would leave the stage before it blocked on a full queue
+	 */
+	private static void fail(Work work, Throwable e, AtomicInteger failed)
+	{
+		failed.incrementAndGet();
+		System.err.printf("Failed to generate %s: %s\n", work.job, e);
+	}
+
+	private static List<Thread> startStage(String name, int count, Stage stage)
+	{
+		List<Thread> threads = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			Thread thread = new Thread(() ->
+			{
+				try
+				{
+					stage.run();
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}, "pipeline-" + name + "-" + i);
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		return threads;
+	}
+
+	private static void join(List<Thread> threads) throws InterruptedException
+	{
+		for (Thread thread : threads)
+			thread.join();
+	}
+
+	@FunctionalInterface
+	private interface Stage
+	{
+		void run() throws InterruptedException;
+	}
+
+	private static class Work
+	{
+		private final BatchJob job;
+		private final long start;
+
+		private Graph graph;
+		private BufferedImage image;
+
+		Work(BatchJob job, long start)
+		{
+			this.job = job;
+			this.start = start;
+		}
+	}
+}
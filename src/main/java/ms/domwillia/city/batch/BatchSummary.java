@@ -0,0 +1,80 @@
+package ms.domwillia.city.batch;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and latency of a finished batch
+ */
+public class BatchSummary
+{
+	private final int completed;
+	private final int failed;
+	private final long elapsedNanos;
+
+	// sorted ascending
+	private final long[] latencies;
+
+	BatchSummary(int failed, long elapsedNanos, long[] latencies)
+	{
+		this.completed = latencies.length;
+		this.failed = failed;
+		this.elapsedNanos = elapsedNanos;
+		this.latencies = latencies.clone();
+		Arrays.sort(this.latencies);
+	}
+
+	public int getCompleted()
+	{
+		return completed;
+	}
+
+	public int getFailed()
+	{
+		return failed;
+	}
+
+	public double getElapsedSeconds()
+	{
+		return elapsedNanos / 1e9;
+	}
+
+	public double getCitiesPerSecond()
+	{
+		return elapsedNanos == 0 ? 0 : completed / getElapsedSeconds();
+	}
+
+	/**
+	 * @param percentile Between 0 and 100
+	 * @return Job latency in milliseconds at the given percentile
+	 */
+	public double getLatencyMillis(double percentile)
+	{
+		if (latencies.length == 0)
+			return 0;
+
+		int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+		index = Math.max(0, Math.min(latencies.length - 1, index));
+		return latencies[index] / 1e6;
+	}
+
+	public double getMeanLatencyMillis()
+	{
+		if (latencies.length == 0)
+			return 0;
+
+		long total = 0;
+		for (long latency : latencies)
+			total += latency;
+		return total / 1e6 / latencies.length;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d cities (%d failed) in %.2fs, %.2f cities/s\n" +
+				"latency ms: min %.1f, mean %.1f, p50 %.1f, p95 %.1f, max %.1f",
+			completed, failed, getElapsedSeconds(), getCitiesPerSecond(),
+			getLatencyMillis(0), getMeanLatencyMillis(), getLatencyMillis(50), getLatencyMillis(95),
+			getLatencyMillis(100));
+	}
+}
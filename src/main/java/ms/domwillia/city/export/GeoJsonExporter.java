@@ -0,0 +1,54 @@
+package ms.domwillia.city.export;
+
+import ms.domwillia.city.graph.GraphView;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a road network as a GeoJSON FeatureCollection, with a LineString feature for every edge.
+ * Coordinates are the graph's own planar x and y rather than longitude and latitude. Edges are streamed
+ * straight to the writer, so nothing proportional to the size of the graph is held in memory
+ */
+public class GeoJsonExporter
+{
+	public void export(GraphView graph, File file) throws IOException
+	{
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))
+		{
+			export(graph, out);
+		}
+	}
+
+	public void export(GraphView graph, Writer out) throws IOException
+	{
+		NumberWriter numbers = new NumberWriter();
+
+		out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+
+		for (int e = 0; e < graph.getEdgeCount(); e++)
+		{
+			int a = graph.getEdgeSource(e);
+			int b = graph.getEdgeTarget(e);
+
+			if (e > 0)
+				out.write(',');
+			out.write("\n{\"type\":\"Feature\",\"properties\":{\"id\":");
+			out.write(Integer.toString(e));
+			out.write(",\"road\":\"");
+			out.write(graph.getEdgeType(e).name());
+			out.write("\"},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[");
+			numbers.write(out, graph.getX(a));
+			out.write(',');
+			numbers.write(out, graph.getY(a));
+			out.write("],[");
+			numbers.write(out, graph.getX(b));
+			out.write(',');
+			numbers.write(out, graph.getY(b));
+			out.write("]]}}");
+		}
+
+		out.write("\n]}\n");
+		out.flush();
+	}
+}
@@ -0,0 +1,61 @@
+package ms.domwillia.city.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes coordinates as plain decimals without going through {@link String#format} or boxing,
+ * as vector exports write several for every edge
+ */
+class NumberWriter
+{
+	private static final int DECIMALS = 2;
+	private static final long SCALE = 100;
+
+	private final char[] buffer = new char[24];
+
+	/**
+	 * Writes the value rounded to two decimal places, leaving off trailing zeros
+	 */
+	void write(Writer out, double value) throws IOException
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("Cannot write " + value);
+
+		long scaled = Math.round(value * SCALE);
+		boolean negative = scaled < 0;
+		if (negative)
+			scaled = -scaled;
+
+		int pos = buffer.length;
+		long fraction = scaled % SCALE;
+		long whole = scaled / SCALE;
+
+		if (fraction != 0)
+		{
+			boolean trailing = true;
+			for (int i = 0; i < DECIMALS; i++)
+			{
+				int digit = (int) (fraction % 10);
+				fraction /= 10;
+				if (trailing && digit == 0)
+					continue;
+
+				trailing = false;
+				buffer[--pos] = (char) ('0' + digit);
+			}
+			buffer[--pos] = '.';
+		}
+
+		do
+		{
+			buffer[--pos] = (char) ('0' + whole % 10);
+			whole /= 10;
+		} while (whole != 0);
+
+		if (negative)
+			buffer[--pos] = '-';
+
+		out.write(buffer, pos, buffer.length - pos);
+	}
+}
@@ -0,0 +1,550 @@
+package ms.domwillia.city.export;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder that reads pixels straight from an image's raster. Images with few enough colours, such
+ * as renders, can be written with an indexed palette, and large images can be deflated in parallel by
+ * splitting them into bands of rows that are compressed independently and joined with sync flushes
+ */
+public class PngEncoder
+{
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final int MAX_PALETTE_SIZE = 256;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	public enum Compression
+	{
+		STORE(Deflater.NO_COMPRESSION, 0x01),
+		FAST(Deflater.BEST_SPEED, 0x01),
+		BEST(Deflater.BEST_COMPRESSION, 0xDA);
+
+		private final int level;
+
+		// second byte of the zlib header, advertising the level used
+		private final int zlibFlags;
+
+		Compression(int level, int zlibFlags)
+		{
+			this.level = level;
+			this.zlibFlags = zlibFlags;
+		}
+	}
+
+	/**
+	 * Scanline filter applied to every row of a truecolour image. Indexed images are always written
+	 * unfiltered, as filtering palette indices only hurts compression
+	 */
+	public enum Filter
+	{
+		NONE(0),
+		SUB(1),
+		UP(2),
+		PAETH(4);
+
+		// filter type byte written before each row
+		private final int type;
+
+		Filter(int type)
+		{
+			this.type = type;
+		}
+	}
+
+	private final Compression compression;
+	private final Filter filter;
+	private final boolean palette;
+	private final int threads;
+
+	/**
+	 * Fast compression with an indexed palette where possible, on the calling thread. Truecolour
+	 * fallbacks use the sub filter
+	 */
+	public PngEncoder()
+	{
+		this(Compression.FAST, Filter.SUB, true, 1);
+	}
+
+	/**
+	 * @param filter  Filter for truecolour rows, ignored for indexed images
+	 * @param palette Write an indexed image if there are no more than 256 colours
+	 * @param threads Number of bands to deflate in parallel, or 1 to deflate on the calling thread
+	 */
+	public PngEncoder(Compression compression, Filter filter, boolean palette, int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid thread count " + threads);
+
+		this.compression = compression;
+		this.filter = filter;
+		this.palette = palette;
+		this.threads = threads;
+	}
+
+	public void write(BufferedImage image, File file) throws IOException
+	{
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))
+		{
+			encode(image, out);
+		}
+	}
+
+	public void encode(BufferedImage image, OutputStream out) throws IOException
+	{
+		Pixels pixels = new Pixels(image);
+
+		Palette colours = palette ? Palette.build(pixels) : null;
+		boolean translucent = colours != null ? colours.isTranslucent() : pixels.isTranslucent();
+
+		int colourType;
+		int bytesPerPixel;
+		if (colours != null)
+		{
+			colourType = 3;
+			bytesPerPixel = 1;
+		} else if (translucent)
+		{
+			colourType = 6;
+			bytesPerPixel = 4;
+		} else
+		{
+			colourType = 2;
+			bytesPerPixel = 3;
+		}
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(SIGNATURE);
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		DataOutputStream headerData = new DataOutputStream(header);
+		headerData.writeInt(pixels.width);
+		headerData.writeInt(pixels.height);
+		headerData.writeByte(8); // bit depth
+		headerData.writeByte(colourType);
+		headerData.writeByte(0); // deflate
+		headerData.writeByte(0); // adaptive filtering
+		headerData.writeByte(0); // no interlace
+		writeChunk(data, "IHDR", header.toByteArray());
+
+		if (colours != null)
+		{
+			writeChunk(data, "PLTE", colours.getRgb());
+			if (translucent)
+				writeChunk(data, "tRNS", colours.getAlpha());
+		}
+
+		Filter rowFilter = colours != null ? Filter.NONE : filter;
+		Band[] bands = deflate(pixels, colours, rowFilter, bytesPerPixel);
+
+		long adler = 1;
+		for (Band band : bands)
+			adler = combineAdler32(adler, band.adler, band.length);
+
+		byte[] zlibHeader = {0x78, (byte) compression.zlibFlags};
+		byte[] zlibTrailer = {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+		for (int i = 0; i < bands.length; i++)
+		{
+			byte[] prefix = i == 0 ? zlibHeader : new byte[0];
+			byte[] suffix = i == bands.length - 1 ? zlibTrailer : new byte[0];
+			writeChunk(data, "IDAT", prefix, bands[i].compressed, suffix);
+		}
+
+		writeChunk(data, "IEND");
+		data.flush();
+	}
+
+	private Band[] deflate(Pixels pixels, Palette colours, Filter filter, int bytesPerPixel) throws IOException
+	{
+		int rowsPerBand = (pixels.height + threads - 1) / threads;
+		// rounding up the rows per band can leave fewer bands than threads with rows to fill
+		int bandCount = Math.max(1, (pixels.height + rowsPerBand - 1) / rowsPerBand);
+
+		List<Callable<Band>> tasks = new ArrayList<>(bandCount);
+		for (int i = 0; i < bandCount; i++)
+		{
+			int from = i * rowsPerBand;
+			int to = Math.min(pixels.height, from + rowsPerBand);
+			boolean last = i == bandCount - 1;
+			tasks.add(() -> deflateBand(pixels, colours, filter, bytesPerPixel, from, to, last));
+		}
+
+		Band[] bands = new Band[bandCount];
+		if (bandCount == 1)
+		{
+			try
+			{
+				bands[0] = tasks.get(0).call();
+			} catch (IOException | RuntimeException e)
+			{
+				throw e;
+			} catch (Exception e)
+			{
+				throw new IOException(e);
+			}
+			return bands;
+		}
+
+		try
+		{
+			List<Future<Band>> futures = ForkJoinPool.commonPool().invokeAll(tasks);
+			for (int i = 0; i < bandCount; i++)
+				bands[i] = futures.get(i).get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while deflating");
+		} catch (ExecutionException e)
+		{
+			throw new IOException("Failed to deflate", e.getCause());
+		}
+
+		return bands;
+	}
+
+	/**
+	 * Filters and compresses the given rows. Every band but the last ends with a sync flush so the
+	 * compressed bands can simply be concatenated
+	 */
+	private Band deflateBand(Pixels pixels, Palette colours, Filter filter, int bytesPerPixel, int from, int to, boolean last)
+	{
+		int rowLength = pixels.width * bytesPerPixel;
+		byte[] previous = new byte[rowLength];
+		byte[] current = new byte[rowLength];
+		byte[] filtered = new byte[rowLength + 1];
+		filtered[0] = (byte) filter.type;
+
+		if (from > 0)
+			pixels.toBytes(from - 1, colours, bytesPerPixel, previous);
+
+		Deflater deflater = new Deflater(compression.level, true);
+		Adler32 adler = new Adler32();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		try
+		{
+			for (int y = from; y < to; y++)
+			{
+				pixels.toBytes(y, colours, bytesPerPixel, current);
+				applyFilter(filter, current, previous, filtered, bytesPerPixel);
+
+				adler.update(filtered, 0, filtered.length);
+				deflater.setInput(filtered, 0, filtered.length);
+				while (!deflater.needsInput())
+					out.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH));
+
+				byte[] tmp = previous;
+				previous = current;
+				current = tmp;
+			}
+
+			if (last)
+			{
+				deflater.finish();
+				while (!deflater.finished())
+					out.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length));
+			} else
+			{
+				int written;
+				do
+				{
+					written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					out.write(buffer, 0, written);
+				} while (written == buffer.length);
+			}
+		} finally
+		{
+			deflater.end();
+		}
+
+		return new Band(out.toByteArray(), adler.getValue(), (long) (to - from) * filtered.length);
+	}
+
+	private static void applyFilter(Filter filter, byte[] current, byte[] previous, byte[] filtered, int bpp)
+	{
+		int length = current.length;
+		switch (filter)
+		{
+			case NONE:
+				System.arraycopy(current, 0, filtered, 1, length);
+				break;
+
+			case SUB:
+				for (int i = 0; i < length; i++)
+				{
+					int left = i >= bpp ? current[i - bpp] : 0;
+					filtered[i + 1] = (byte) (current[i] - left);
+				}
+				break;
+
+			case UP:
+				for (int i = 0; i < length; i++)
+					filtered[i + 1] = (byte) (current[i] - previous[i]);
+				break;
+
+			case PAETH:
+				for (int i = 0; i < length; i++)
+				{
+					int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+					int b = previous[i] & 0xFF;
+					int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+					filtered[i + 1] = (byte) (current[i] - paeth(a, b, c));
+				}
+				break;
+		}
+	}
+
+	private static int paeth(int a, int b, int c)
+	{
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc)
+			return a;
+		return pb <= pc ? b : c;
+	}
+
+	private static void writeChunk(DataOutputStream out, String type, byte[]... parts) throws IOException
+	{
+		int length = 0;
+		for (byte[] part : parts)
+			length += part.length;
+
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+
+		out.writeInt(length);
+		out.write(typeBytes);
+		for (byte[] part : parts)
+		{
+			crc.update(part);
+			out.write(part);
+		}
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * @return The Adler-32 checksum of two byte sequences concatenated, as in zlib's adler32_combine
+	 */
+	private static long combineAdler32(long adler1, long adler2, long length2)
+	{
+		final long base = 65521;
+		long rem = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (rem * sum1) % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+		if (sum1 >= base) sum1 -= base;
+		if (sum1 >= base) sum1 -= base;
+		if (sum2 >= base << 1) sum2 -= base << 1;
+		if (sum2 >= base) sum2 -= base;
+		return sum1 | (sum2 << 16);
+	}
+
+	private static class Band
+	{
+		private final byte[] compressed;
+		private final long adler;
+		private final long length;
+
+		Band(byte[] compressed, long adler, long length)
+		{
+			this.compressed = compressed;
+			this.adler = adler;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Non-premultiplied ARGB pixels, shared with the image where its layout allows
+	 */
+	private static class Pixels
+	{
+		private final int width, height;
+		private final int[] data;
+		private final int offset, stride;
+
+		// alpha bits of the data are meaningless
+		private final boolean opaque;
+
+		Pixels(BufferedImage image)
+		{
+			width = image.getWidth();
+			height = image.getHeight();
+
+			Raster raster = image.getRaster();
+			int type = image.getType();
+			if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) &&
+				raster.getParent() == null &&
+				raster.getDataBuffer() instanceof DataBufferInt &&
+				raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+			{
+				DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+				data = buffer.getData();
+				offset = buffer.getOffset();
+				stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+				opaque = type == BufferedImage.TYPE_INT_RGB;
+			} else
+			{
+				data = image.getRGB(0, 0, width, height, null, 0, width);
+				offset = 0;
+				stride = width;
+				opaque = false;
+			}
+		}
+
+		int get(int x, int y)
+		{
+			int pixel = data[offset + y * stride + x];
+			return opaque ? pixel | 0xFF000000 : pixel;
+		}
+
+		boolean isTranslucent()
+		{
+			if (opaque)
+				return false;
+
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+					if ((get(x, y) >>> 24) != 0xFF)
+						return true;
+
+			return false;
+		}
+
+		void toBytes(int y, Palette colours, int bytesPerPixel, byte[] out)
+		{
+			int i = 0;
+			for (int x = 0; x < width; x++)
+			{
+				int pixel = get(x, y);
+				if (colours != null)
+				{
+					out[i++] = (byte) colours.indexOf(pixel);
+				} else
+				{
+					out[i++] = (byte) (pixel >>> 16);
+					out[i++] = (byte) (pixel >>> 8);
+					out[i++] = (byte) pixel;
+					if (bytesPerPixel == 4)
+						out[i++] = (byte) (pixel >>> 24);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Up to 256 distinct colours, in order of first appearance
+	 */
+	private static class Palette
+	{
+		// open addressing table of colours, with their index + 1 or 0 if empty
+		private final int[] keys = new int[MAX_PALETTE_SIZE * 4];
+		private final int[] indices = new int[MAX_PALETTE_SIZE * 4];
+		private final int[] colours = new int[MAX_PALETTE_SIZE];
+		private int size;
+
+		/**
+		 * @return The palette, or null if there are too many colours
+		 */
+		static Palette build(Pixels pixels)
+		{
+			Palette palette = new Palette();
+			int last = 0;
+			boolean first = true;
+
+			for (int y = 0; y < pixels.height; y++)
+			{
+				for (int x = 0; x < pixels.width; x++)
+				{
+					int pixel = pixels.get(x, y);
+					if (!first && pixel == last)
+						continue;
+
+					first = false;
+					last = pixel;
+					if (!palette.add(pixel))
+						return null;
+				}
+			}
+
+			return palette;
+		}
+
+		/**
+		 * @return False if the palette is full
+		 */
+		private boolean add(int colour)
+		{
+			int slot = slot(colour);
+			if (indices[slot] != 0)
+				return true;
+
+			if (size == MAX_PALETTE_SIZE)
+				return false;
+
+			keys[slot] = colour;
+			colours[size] = colour;
+			indices[slot] = ++size;
+			return true;
+		}
+
+		int indexOf(int colour)
+		{
+			return indices[slot(colour)] - 1;
+		}
+
+		private int slot(int colour)
+		{
+			int mask = keys.length - 1;
+			int slot = (colour * 0x9E3779B9 >>> 16) & mask;
+			while (indices[slot] != 0 && keys[slot] != colour)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		boolean isTranslucent()
+		{
+			for (int i = 0; i < size; i++)
+				if ((colours[i] >>> 24) != 0xFF)
+					return true;
+			return false;
+		}
+
+		byte[] getRgb()
+		{
+			byte[] rgb = new byte[size * 3];
+			for (int i = 0; i < size; i++)
+			{
+				rgb[i * 3] = (byte) (colours[i] >>> 16);
+				rgb[i * 3 + 1] = (byte) (colours[i] >>> 8);
+				rgb[i * 3 + 2] = (byte) colours[i];
+			}
+			return rgb;
+		}
+
+		byte[] getAlpha()
+		{
+			byte[] alpha = new byte[size];
+			for (int i = 0; i < size; i++)
+				alpha[i] = (byte) (colours[i] >>> 24);
+			return alpha;
+		}
+	}
+}
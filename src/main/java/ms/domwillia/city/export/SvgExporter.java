@@ -0,0 +1,87 @@
+package ms.domwillia.city.export;
+
+import ms.domwillia.city.Config;
+import ms.domwillia.city.RoadType;
+import ms.domwillia.city.graph.GraphView;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a road network as SVG, with one path per {@link RoadType} styled like {@link ms.domwillia.city.graph.Graph#render()}.
+ * Edges are streamed straight to the writer, so nothing proportional to the size of the graph is held in memory
+ */
+public class SvgExporter
+{
+	private final Color[] colours;
+	private final int[] thicknesses;
+
+	/**
+	 * Takes the road colours and thicknesses from the current {@link Config}
+	 */
+	public SvgExporter()
+	{
+		colours = new Color[RoadType.values().length];
+		thicknesses = new int[RoadType.values().length];
+
+		colours[RoadType.MAIN.ordinal()] = Config.getColour(Config.Key.ROAD_MAIN_RENDER_COLOUR);
+		thicknesses[RoadType.MAIN.ordinal()] = Config.getInt(Config.Key.ROAD_MAIN_RENDER_THICKNESS);
+		colours[RoadType.MINOR.ordinal()] = Config.getColour(Config.Key.ROAD_MINOR_RENDER_COLOUR);
+		thicknesses[RoadType.MINOR.ordinal()] = Config.getInt(Config.Key.ROAD_MINOR_RENDER_THICKNESS);
+	}
+
+	public void export(GraphView graph, File file) throws IOException
+	{
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))
+		{
+			export(graph, out);
+		}
+	}
+
+	public void export(GraphView graph, Writer out) throws IOException
+	{
+		NumberWriter numbers = new NumberWriter();
+
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + graph.getWidth() +
+			"\" height=\"" + graph.getHeight() + "\" viewBox=\"0 0 " + graph.getWidth() + " " + graph.getHeight() + "\">\n");
+		out.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+		// one pass over the edges per road type, so each type is a single path
+		for (RoadType type : RoadType.values())
+		{
+			Color colour = colours[type.ordinal()];
+			out.write("<path id=\"" + type.name().toLowerCase() + "\" fill=\"none\" stroke-linecap=\"square\" stroke=\"");
+			out.write(String.format("#%02x%02x%02x", colour.getRed(), colour.getGreen(), colour.getBlue()));
+			if (colour.getAlpha() != 255)
+				out.write("\" stroke-opacity=\"" + colour.getAlpha() / 255.0);
+			out.write("\" stroke-width=\"" + thicknesses[type.ordinal()] + "\" d=\"");
+
+			boolean first = true;
+			for (int e = 0; e < graph.getEdgeCount(); e++)
+			{
+				if (graph.getEdgeType(e) != type)
+					continue;
+
+				int a = graph.getEdgeSource(e);
+				int b = graph.getEdgeTarget(e);
+
+				out.write(first ? "M" : " M");
+				numbers.write(out, graph.getX(a));
+				out.write(' ');
+				numbers.write(out, graph.getY(a));
+				out.write('L');
+				numbers.write(out, graph.getX(b));
+				out.write(' ');
+				numbers.write(out, graph.getY(b));
+				first = false;
+			}
+
+			out.write("\"/>\n");
+		}
+
+		out.write("</svg>\n");
+		out.flush();
+	}
+}
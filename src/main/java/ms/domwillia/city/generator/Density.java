@@ -1,38 +1,70 @@
 package ms.domwillia.city.generator;
 
-import ms.domwillia.city.Config;
-
 public class Density
 {
-	private static OpenSimplexNoise NOISE;
+	private final OpenSimplexNoise noise;
+	private final double scale;
+
+	// used instead of noise if set
+	private final FloatSimplexNoise floatNoise;
 
-	static
+	public Density(long seed, double scale)
 	{
-		reseed();
+		this(seed, scale, false);
 	}
 
-	private Density()
+	/**
+	 * @param floatNoise Evaluate the noise in single precision, see {@link FloatSimplexNoise} for the error
+	 */
+	public Density(long seed, double scale, boolean floatNoise)
 	{
+		this.noise = floatNoise ? null : new OpenSimplexNoise(seed);
+		this.floatNoise = floatNoise ? new FloatSimplexNoise(seed) : null;
+		this.scale = scale;
 	}
 
-	public static void reseed()
+	public double getValue(int x, int y)
 	{
-		NOISE = new OpenSimplexNoise(System.nanoTime());
+		return getValue((double) x, (double) y);
 	}
 
-	public static double getValue(int x, int y)
+	public double getValue(double x, double y)
 	{
-		return getValue((double) x, (double) y);
+		if (floatNoise != null)
+			return normalise(floatNoise.eval((float) (x / scale), (float) (y / scale)));
+
+		return normalise(noise.eval(x / scale, y / scale));
+	}
+
+	/**
+	 * Fills out with the density over a w by h grid of points starting at (x0, y0), row by row
+	 *
+	 * @param step Distance between neighbouring points
+	 */
+	public void fillGrid(double x0, double y0, double step, int w, int h, float[] out)
+	{
+		if (floatNoise != null)
+		{
+			for (int j = 0; j < h; j++)
+			{
+				float y = (float) ((y0 + j * step) / scale);
+				for (int i = 0; i < w; i++)
+					out[j * w + i] = (float) normalise(floatNoise.eval((float) ((x0 + i * step) / scale), y));
+			}
+			return;
+		}
+
+		noise.fillGrid(x0 / scale, y0 / scale, step / scale, step / scale, w, h, out);
+		for (int i = 0; i < w * h; i++)
+			out[i] = (float) normalise(out[i]);
 	}
 
-	public static double getValue(double x, double y)
+	private static double normalise(double old_value)
 	{
 		double old_min = -1.0;
 		double old_max = 1.0;
 		double new_min = 0.0;
 		double new_max = 1.0;
-		double scale = Config.getDouble(Config.Key.NOISE_SCALE);
-		double old_value = NOISE.eval(x / scale, y / scale);
 
 		double new_value = ( (old_value - old_min) / (old_max - old_min) ) * (new_max - new_min) + new_min;
 		return Math.min(new_max, Math.max(new_min, new_value));
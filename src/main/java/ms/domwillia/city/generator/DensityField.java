@@ -0,0 +1,73 @@
+package ms.domwillia.city.generator;
+
+/**
+ * {@link Density} sampled onto a grid and answered with bilinear interpolation, so each query costs a
+ * few array reads instead of a noise evaluation. The grid is split into tiles that are only sampled
+ * when first queried, so regions that are never visited cost nothing. Queries outside the covered
+ * area fall back to evaluating the noise directly.
+ * Safe to share between threads: a tile sampled by two threads at once is computed twice, identically
+ */
+public class DensityField extends Density
+{
+	private final double resolution;
+	private final double inverseResolution;
+
+	private final TileGrid tiles;
+
+	/**
+	 * @param resolution Distance between samples, smaller is more accurate
+	 * @param width      Extent of the sampled area from the origin
+	 * @param height     Extent of the sampled area from the origin
+	 */
+	public DensityField(long seed, double scale, double resolution, double width, double height)
+	{
+		this(seed, scale, false, resolution, width, height);
+	}
+
+	/**
+	 * @param floatNoise Sample the noise in single precision
+	 */
+	public DensityField(long seed, double scale, boolean floatNoise, double resolution, double width, double height)
+	{
+		super(seed, scale, floatNoise);
+
+		if (resolution <= 0)
+			throw new IllegalArgumentException("Invalid density resolution " + resolution);
+
+		this.resolution = resolution;
+		this.inverseResolution = 1.0 / resolution;
+		int cellsX = Math.max(1, (int) Math.ceil(width * inverseResolution));
+		int cellsY = Math.max(1, (int) Math.ceil(height * inverseResolution));
+		this.tiles = new TileGrid(cellsX, cellsY, this::sampleTile, null);
+	}
+
+	@Override
+	public double getValue(double x, double y)
+	{
+		double gx = x * inverseResolution;
+		double gy = y * inverseResolution;
+		if (!tiles.contains(gx, gy))
+			return getExactValue(x, y);
+
+		return tiles.getValue(gx, gy);
+	}
+
+	/**
+	 * @return The noise evaluated at the given position, without interpolation
+	 */
+	public double getExactValue(double x, double y)
+	{
+		return super.getValue(x, y);
+	}
+
+	public double getResolution()
+	{
+		return resolution;
+	}
+
+	private void sampleTile(int tx, int ty, float[] tile)
+	{
+		fillGrid(tx * TileGrid.TILE_CELLS * resolution, ty * TileGrid.TILE_CELLS * resolution, resolution,
+			TileGrid.TILE_SAMPLES, TileGrid.TILE_SAMPLES, tile);
+	}
+}
@@ -0,0 +1,137 @@
+package ms.domwillia.city.generator;
+
+/**
+ * Mip pyramid of a {@link Density}, for callers that sample it more coarsely than the world, such as
+ * zoomed out previews. Level 0 is the density itself, read just as a full size caller would read it,
+ * such as through a {@link DensityField}, and each level after that has half as many samples in each
+ * direction. Queries pick the level whose spacing matches the caller's footprint, so their cost follows
+ * the number of samples asked for rather than the area they cover.
+ * <p>
+ * Levels are built lazily a tile at a time. Coarse samples average a 2x2 pattern of noise samples
+ * within their footprint rather than being built from the finer levels, so touching a coarse tile never
+ * fills in the finer ones. Tiles are kept up to a byte budget and evicted oldest first. Reads don't
+ * lock, only sampling a new tile does
+ */
+public class DensityPyramid
+{
+	private final Density density;
+	private final double resolution;
+	private final int levels;
+
+	private final TileGrid[] grids;
+	private final TileGrid.Budget budget;
+
+	/**
+	 * @param resolution Distance between the density's own samples, such as {@link DensityField#getResolution()}
+	 * @param width      Extent of the sampled area from the origin
+	 * @param height     Extent of the sampled area from the origin
+	 * @param byteBudget Approximate memory to use for tiles across all levels
+	 */
+	public DensityPyramid(Density density, double resolution, double width, double height, long byteBudget)
+	{
+		if (resolution <= 0)
+			throw new IllegalArgumentException("Invalid density resolution " + resolution);
+
+		this.density = density;
+		this.resolution = resolution;
+		this.budget = new TileGrid.Budget(byteBudget);
+
+		// stop once a single tile covers the whole area
+		int levels = 1;
+		while (getSpacing(levels - 1) * TileGrid.TILE_CELLS < Math.max(width, height))
+			levels++;
+		this.levels = levels;
+
+		// level 0 reads the density directly
+		this.grids = new TileGrid[levels];
+		for (int level = 1; level < levels; level++)
+		{
+			int gridLevel = level;
+			double spacing = getSpacing(level);
+			grids[level] = new TileGrid((int) Math.ceil(width / spacing), (int) Math.ceil(height / spacing),
+				(tx, ty, tile) -> sampleTile(gridLevel, tx, ty, tile), budget);
+		}
+	}
+
+	public int getLevelCount()
+	{
+		return levels;
+	}
+
+	/**
+	 * @return Distance between samples on the given level
+	 */
+	public double getSpacing(int level)
+	{
+		return resolution * (1L << level);
+	}
+
+	/**
+	 * @param footprint Size of the area the caller's sample stands for, such as the world size of a pixel
+	 * @return The coarsest level with samples no further apart than the footprint
+	 */
+	public int getLevel(double footprint)
+	{
+		int level = 0;
+		while (level + 1 < levels && getSpacing(level + 1) <= footprint)
+			level++;
+		return level;
+	}
+
+	/**
+	 * @return The density at the given position, filtered to the given footprint
+	 */
+	public double getValue(double x, double y, double footprint)
+	{
+		return getValue(getLevel(footprint), x, y);
+	}
+
+	/**
+	 * @return The density at the given position interpolated from the given level, or read directly
+	 * if the position is outside the covered area
+	 */
+	public double getValue(int level, double x, double y)
+	{
+		if (level == 0)
+			return density.getValue(x, y);
+
+		double spacing = getSpacing(level);
+		double gx = x / spacing;
+		double gy = y / spacing;
+		TileGrid grid = grids[level];
+		if (!grid.contains(gx, gy))
+			return density.getValue(x, y);
+
+		return grid.getValue(gx, gy);
+	}
+
+	/**
+	 * @return Approximate memory used by tiles
+	 */
+	public long getBytes()
+	{
+		return budget.getBytes();
+	}
+
+	private void sampleTile(int level, int tx, int ty, float[] tile)
+	{
+		double spacing = getSpacing(level);
+		double x0 = tx * TileGrid.TILE_CELLS * spacing;
+		double y0 = ty * TileGrid.TILE_CELLS * spacing;
+
+		int samplesPerSide = TileGrid.TILE_SAMPLES;
+
+		// average four samples spread over each sample's footprint
+		float[] samples = new float[tile.length];
+		double offset = spacing / 4;
+		for (int oy = -1; oy <= 1; oy += 2)
+		{
+			for (int ox = -1; ox <= 1; ox += 2)
+			{
+				density.fillGrid(x0 + ox * offset, y0 + oy * offset, spacing, samplesPerSide, samplesPerSide, samples);
+				for (int i = 0; i < tile.length; i++)
+					tile[i] += samples[i] * 0.25f;
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package ms.domwillia.city.generator;
+
+import ms.domwillia.city.Config;
+import ms.domwillia.city.graph.Graph;
+import ms.domwillia.city.graph.GraphFile;
+import ms.domwillia.city.graph.MappedGraph;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Cache of generated cities keyed by seed and a hash of the whole {@link Config}, so revisiting the same
+ * settings doesn't pay for generation again. Recently used graphs, and optionally their renders, are kept
+ * in memory up to a byte budget. Graphs evicted from memory can be spilled to a directory in the
+ * {@link GraphFile} format and are loaded back from there on a later miss.
+ * Cached graphs are shared, so must not be modified
+ */
+public class GenerationCache
+{
+	// rough heap cost of a graph, covering storage, the vertex lookup table and the spatial index
+	private static final long BYTES_PER_VERTEX = 96;
+	private static final long BYTES_PER_EDGE = 24;
+
+	private final long byteBudget;
+	private final boolean cacheImages;
+	private final File spillDirectory;
+
+	// in access order, so the first entry is the least recently used
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+
+	private long hits, misses;
+
+	/**
+	 * @param byteBudget     Approximate memory to use for cached graphs and images
+	 * @param cacheImages    Keep renders alongside their graphs
+	 * @param spillDirectory Directory to write evicted graphs to, or null to drop them
+	 */
+	public GenerationCache(long byteBudget, boolean cacheImages, File spillDirectory)
+	{
+		if (byteBudget < 0)
+			throw new IllegalArgumentException("Invalid byte budget " + byteBudget);
+
+		this.byteBudget = byteBudget;
+		this.cacheImages = cacheImages;
+		this.spillDirectory = spillDirectory;
+
+		if (spillDirectory != null)
+			spillDirectory.mkdirs();
+	}
+
+	/**
+	 * @return The city for the given seed with the current {@link Config}, generated if it isn't cached
+	 */
+	public Graph getGraph(long seed)
+	{
+		return getEntry(new Key(seed, Config.hash())).graph;
+	}
+
+	/**
+	 * @return The render of {@link #getGraph(long)}, reused if images are cached
+	 */
+	public BufferedImage getRender(long seed)
+	{
+		Key key = new Key(seed, Config.hash());
+		Entry entry = getEntry(key);
+		if (!cacheImages)
+			return entry.graph.render();
+
+		synchronized (this)
+		{
+			if (entry.image != null)
+				return entry.image;
+		}
+
+		BufferedImage image = entry.graph.render();
+		List<Map.Entry<Key, Entry>> evicted = Collections.emptyList();
+		synchronized (this)
+		{
+			// only account for it if the entry is still cached
+			if (entry.image == null && entries.get(key) == entry)
+			{
+				entry.image = image;
+				bytes += imageBytes(image);
+				evicted = evict();
+			}
+		}
+		spill(evicted);
+		return image;
+	}
+
+	private Entry getEntry(Key key)
+	{
+		synchronized (this)
+		{
+			Entry entry = entries.get(key);
+			if (entry != null)
+			{
+				hits++;
+				return entry;
+			}
+			misses++;
+		}
+
+		// generate outside the lock, so other seeds can be served meanwhile
+		Graph graph = loadSpilled(key);
+		if (graph == null)
+		{
+			GeneratorSettings settings = GeneratorSettings.fromConfig();
+			graph = new Graph(Config.getInt(Config.Key.WORLD_WIDTH), Config.getInt(Config.Key.WORLD_HEIGHT));
+			new Generator(graph, key.seed, settings).generate();
+		}
+
+		Entry entry = new Entry(graph);
+		List<Map.Entry<Key, Entry>> evicted;
+		synchronized (this)
+		{
+			Entry existing = entries.get(key);
+			if (existing != null)
+				return existing;
+
+			entries.put(key, entry);
+			bytes += entry.getBytes();
+			evicted = evict();
+		}
+		spill(evicted);
+		return entry;
+	}
+
+	private Graph loadSpilled(Key key)
+	{
+		if (spillDirectory == null)
+			return null;
+
+		File file = spillFile(key);
+		if (!file.isFile())
+			return null;
+
+		try
+		{
+			Graph graph = Graph.copyOf(MappedGraph.open(file));
+			GeneratorSettings settings = GeneratorSettings.fromConfig();
+			graph.setDensity(new GenerationContext(key.seed, settings, graph.getWidth(), graph.getHeight()).getDensity());
+			return graph;
+		} catch (IOException e)
+		{
+			// unreadable, so regenerate and overwrite it on the next spill
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Must be called holding the lock
+	 *
+	 * @return The entries removed to get back under budget, to be spilled once the lock is released
+	 */
+	private List<Map.Entry<Key, Entry>> evict()
+	{
+		List<Map.Entry<Key, Entry>> evicted = new ArrayList<>();
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while (bytes > byteBudget && it.hasNext())
+		{
+			Map.Entry<Key, Entry> eldest = it.next();
+			evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest));
+			it.remove();
+			bytes -= eldest.getValue().getBytes();
+		}
+		return evicted;
+	}
+
+	private void spill(List<Map.Entry<Key, Entry>> evicted)
+	{
+		if (spillDirectory == null)
+			return;
+
+		for (Map.Entry<Key, Entry> entry : evicted)
+		{
+			File file = spillFile(entry.getKey());
+			if (file.isFile())
+				continue;
+
+			// write under a temporary name, so a concurrent load never sees a partial file
+			File temp = null;
+			try
+			{
+				temp = File.createTempFile(file.getName(), ".tmp", spillDirectory);
+				GraphFile.write(entry.getValue().graph, temp);
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e)
+			{
+				// the graph is only lost from the cache, it can still be regenerated
+				if (temp != null)
+					temp.delete();
+				System.err.printf("Failed to spill to %s: %s\n", file, e);
+			}
+		}
+	}
+
+	private File spillFile(Key key)
+	{
+		return new File(spillDirectory, String.format("%016x-%016x.graph", key.seed, key.configHash));
+	}
+
+	private static long imageBytes(BufferedImage image)
+	{
+		return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return Approximate memory used by cached graphs and images
+	 */
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	private static final class Key
+	{
+		private final long seed;
+		private final long configHash;
+
+		Key(long seed, long configHash)
+		{
+			this.seed = seed;
+			this.configHash = configHash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key key = (Key) o;
+			return seed == key.seed && configHash == key.configHash;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(seed, configHash);
+		}
+	}
+
+	private static final class Entry
+	{
+		private final Graph graph;
+		private BufferedImage image;
+
+		Entry(Graph graph)
+		{
+			this.graph = graph;
+		}
+
+		long getBytes()
+		{
+			long total = graph.getVertexCount() * BYTES_PER_VERTEX + graph.getEdgeCount() * BYTES_PER_EDGE;
+			if (image != null)
+				total += imageBytes(image);
+			return total;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package ms.domwillia.city.generator;
+
+import java.util.Random;
+
+/**
+ * Per-generation source of randomness, so that generations don't share any state and a given seed
+ * always produces the same city
+ */
+public class GenerationContext
+{
+	private final long seed;
+	private final Random random;
+	private final Density density;
+
+	/**
+	 * @param width  Extent of the world the density will be queried over
+	 * @param height Extent of the world the density will be queried over
+	 */
+	public GenerationContext(long seed, GeneratorSettings settings, double width, double height)
+	{
+		this(seed, createDensity(seed, settings, width, height));
+	}
+
+	/**
+	 * Shares the given density field, but with a separate random number generator
+	 */
+	GenerationContext(long seed, Density density)
+	{
+		this.seed = seed;
+		this.random = new Random(seed);
+		this.density = density;
+	}
+
+	private static Density createDensity(long seed, GeneratorSettings settings, double width, double height)
+	{
+		if (settings.getDensityResolution() > 0)
+			return new DensityField(seed, settings.getNoiseScale(), settings.isFloatNoise(),
+				settings.getDensityResolution(), width, height);
+
+		return new Density(seed, settings.getNoiseScale(), settings.isFloatNoise());
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	public Random getRandom()
+	{
+		return random;
+	}
+
+	public Density getDensity()
+	{
+		return density;
+	}
+}
@@ -7,21 +7,54 @@ import ms.domwillia.city.graph.Graph;
 import ms.domwillia.city.graph.Vertex;
 import org.apache.commons.math3.geometry.euclidean.twod.Vector2D;
 
-import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Generator
 {
 	private Graph graph;
 	private Queue<ProposedVertex> frontier;
 
+	private final long seed;
+	private final GeneratorSettings fixedSettings;
+
+	// set up at the start of each generation
+	private GeneratorSettings settings;
+	private GenerationContext context;
 	private GridRule rule;
 
-	public Generator(Graph graph)
+	// only set when generating a single tile of a larger world
+	private Rectangle2D.Double tile;
+	private List<ProposedVertex> crossing;
+
+	/**
+	 * Uses the settings in {@link Config} at the time {@link #generate()} is called
+	 */
+	public Generator(Graph graph, long seed)
+	{
+		this(graph, seed, null);
+	}
+
+	public Generator(Graph graph, long seed, GeneratorSettings settings)
 	{
 		this.graph = graph;
 		this.frontier = new ArrayDeque<>();
-		this.rule = new GridRule();
+		this.seed = seed;
+		this.fixedSettings = settings;
+		this.crossing = new ArrayList<>();
+	}
+
+	private Generator(Graph graph, GenerationContext context, GeneratorSettings settings, Rectangle2D.Double tile)
+	{
+		this(graph, context.getSeed(), settings);
+		this.settings = settings;
+		this.context = context;
+		this.rule = new GridRule(context, settings);
+		this.tile = tile;
 	}
 
 	private void generate(Collection<ProposedVertex> initialFrontier)
@@ -34,6 +67,13 @@ public class Generator
 		{
 			ProposedVertex vertex = frontier.poll();
 
+			// belongs to a neighbouring tile, leave it for stitching
+			if (tile != null && !tile.contains(vertex.getX(), vertex.getY()))
+			{
+				crossing.add(vertex);
+				continue;
+			}
+
 			if (acceptLocalConstraints(vertex))
 			{
 				// may have been tweaked out of range
@@ -72,44 +112,41 @@ public class Generator
 			return false;
 
 		// merge with nearby
-		double mergeThreshold = Config.getDouble(vertex.getType() == RoadType.MAIN ?
-			Config.Key.MAIN_MERGE_THRESHOLD : Config.Key.MINOR_MERGE_THRESHOLD);
-		Point2D toMerge = findClosestVertex(vertex.getPosition(), mergeThreshold,
-			vertex.getPosition(), vertex.getSourceVertex().getPoint());
-		if (toMerge != null)
+		double mergeThreshold = settings.getRoad(vertex.getType()).getMergeThreshold();
+		int toMerge = graph.closestWithin(vertex.getX(), vertex.getY(), mergeThreshold,
+			vertex.getSourceVertex().getId());
+		if (toMerge != -1)
 		{
-			vertex.setPosition(toMerge.getX(), toMerge.getY());
+			vertex.setPosition(graph.getX(toMerge), graph.getY(toMerge));
 			vertex.setShouldProposeMore(false);
 		}
 
 		return true;
 	}
 
-	private Point2D findClosestVertex(Point2D pos, double threshold, Point2D.Double moi, Point2D.Double moiSrc)
+	public Graph getGraph()
 	{
-		Point2D[] nearest = graph.getNearestNeighbours(3, pos);
-		double thresholdSq = threshold * threshold;
-
-		for (Point2D p : nearest)
-		{
-			if (p.equals(moi) || p.equals(moiSrc))
-				continue;
-
-			double distance = p.distanceSq(pos);
-			if (distance <= thresholdSq)
-				return p;
-		}
-
-		return null;
+		return graph;
 	}
 
-	public Graph getGraph()
+	/**
+	 * @return The context of the most recent generation, or null if there hasn't been one
+	 */
+	public GenerationContext getContext()
 	{
-		return graph;
+		return context;
 	}
 
 	public void generate()
 	{
+		settings = fixedSettings != null ? fixedSettings : GeneratorSettings.fromConfig();
+		// main roads are scaled up before minor roads are generated, so cover the scaled size
+		context = new GenerationContext(seed, settings,
+			graph.getWidth() * settings.getMainRoadScaleFactor(),
+			graph.getHeight() * settings.getMainRoadScaleFactor());
+		rule = new GridRule(context, settings);
+		graph.setDensity(context.getDensity());
+
 		int maxTries = 60;
 		do
 		{
@@ -119,16 +156,21 @@ public class Generator
 
 			generate(initialFrontier);
 			graph.scaleAndSubdivide(
-				Config.getInt(Config.Key.MAIN_ROAD_SCALE_FACTOR),
-				Config.getInt(Config.Key.MAIN_ROAD_SUBDIVIDE_COUNT)
+				settings.getMainRoadScaleFactor(),
+				settings.getMainRoadSubdivideCount()
 			);
 
 			// minor roads
 			initialFrontier.clear();
 			initMinorFrontier(initialFrontier);
-			generate(initialFrontier);
+
+			int tiles = settings.getGenerationTiles();
+			if (tiles > 1)
+				generateTiled(initialFrontier, tiles);
+			else
+				generate(initialFrontier);
 		}
-		while (--maxTries > 0 && graph.getVertices().size() < Config.getInt(Config.Key.MINIMUM_VERTICES));
+		while (--maxTries > 0 && graph.getVertexCount() < settings.getMinimumVertices());
 
 		if (maxTries < 0)
 			System.err.println("Total failure");
@@ -136,21 +178,161 @@ public class Generator
 
 	}
 
+	/**
+	 * Expands the frontier in a grid of tiles in parallel, each into its own graph seeded with the
+	 * surrounding main roads. The tiles are then merged into the main graph in order, and proposals
+	 * that crossed between tiles are finished off on this thread, so the result is deterministic
+	 */
+	private void generateTiled(Collection<ProposedVertex> initialFrontier, int tilesPerSide)
+	{
+		int worldWidth = graph.getWidth();
+		int worldHeight = graph.getHeight();
+		int tileWidth = Math.max(1, (worldWidth + tilesPerSide - 1) / tilesPerSide);
+		int tileHeight = Math.max(1, (worldHeight + tilesPerSide - 1) / tilesPerSide);
+
+		// enough surroundings for merges across the border and for the sources of initial proposals
+		int margin = (int) Math.ceil(settings.getMaxMergeThreshold() + settings.getMaxRoadLength());
+
+		Generator[] tiles = new Generator[tilesPerSide * tilesPerSide];
+		for (int ty = 0; ty < tilesPerSide; ty++)
+		{
+			for (int tx = 0; tx < tilesPerSide; tx++)
+			{
+				int x = tx * tileWidth;
+				int y = ty * tileHeight;
+				if (x >= worldWidth || y >= worldHeight)
+					continue;
+
+				int minX = Math.max(0, x - margin);
+				int minY = Math.max(0, y - margin);
+				int maxX = Math.min(worldWidth, x + tileWidth + margin);
+				int maxY = Math.min(worldHeight, y + tileHeight + margin);
+
+				Graph local = new Graph(minX, minY, maxX - minX, maxY - minY,
+					settings.getVertexEpsilon(), settings.getMaxMergeThreshold());
+				for (int v = 0; v < graph.getVertexCount(); v++)
+				{
+					if (local.isInRange(graph.getX(v), graph.getY(v)))
+						local.addVertex(graph.getX(v), graph.getY(v), graph.getType(v));
+				}
+
+				// a tile can't see what its neighbours add, so anything that could merge across an inner
+				// border is left for stitching
+				double merge = settings.getMaxMergeThreshold();
+				double coreMinX = x > 0 ? x + merge : x;
+				double coreMinY = y > 0 ? y + merge : y;
+				double coreMaxX = x + tileWidth < worldWidth ? x + tileWidth - merge : worldWidth;
+				double coreMaxY = y + tileHeight < worldHeight ? y + tileHeight - merge : worldHeight;
+				Rectangle2D.Double core = new Rectangle2D.Double(coreMinX, coreMinY,
+					Math.max(0, coreMaxX - coreMinX), Math.max(0, coreMaxY - coreMinY));
+				tiles[ty * tilesPerSide + tx] = new Generator(local,
+					new GenerationContext(context.getRandom().nextLong(), context.getDensity()), settings, core);
+			}
+		}
+
+		// hand each initial proposal to the tile it lies in
+		List<List<ProposedVertex>> seeds = new ArrayList<>(tiles.length);
+		for (int i = 0; i < tiles.length; i++)
+			seeds.add(new ArrayList<>());
+
+		for (ProposedVertex proposal : initialFrontier)
+		{
+			if (!graph.isInRange(proposal.getX(), proposal.getY()))
+				continue;
+
+			int tx = Math.min(tilesPerSide - 1, (int) (proposal.getX() / tileWidth));
+			int ty = Math.min(tilesPerSide - 1, (int) (proposal.getY() / tileHeight));
+			Graph local = tiles[ty * tilesPerSide + tx].graph;
+
+			Vertex src = proposal.getSourceVertex();
+			int localSrc = local.findVertex(src.getPoint().x, src.getPoint().y);
+			if (localSrc == -1)
+			{
+				crossing.add(proposal);
+				continue;
+			}
+
+			seeds.get(ty * tilesPerSide + tx).add(
+				new ProposedVertex(proposal.getX(), proposal.getY(), local.getVertex(localSrc), proposal.getType()));
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < tiles.length; i++)
+		{
+			Generator tile = tiles[i];
+			List<ProposedVertex> tileSeeds = seeds.get(i);
+			if (tile != null && !tileSeeds.isEmpty())
+				tasks.add(() ->
+				{
+					tile.generate(tileSeeds);
+					return null;
+				});
+		}
+
+		try
+		{
+			for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while generating tiles", e);
+		} catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Failed to generate tile", e.getCause());
+		}
+
+		// stitch
+		List<ProposedVertex> stitching = new ArrayList<>(crossing);
+		crossing.clear();
+		for (Generator tile : tiles)
+		{
+			if (tile == null)
+				continue;
+
+			Graph local = tile.graph;
+			int[] ids = new int[local.getVertexCount()];
+			for (int v = 0; v < ids.length; v++)
+				ids[v] = graph.addVertex(local.getX(v), local.getY(v), local.getType(v)).getId();
+
+			for (int e = 0; e < local.getEdgeCount(); e++)
+				graph.addEdge(ids[local.getEdgeSource(e)], ids[local.getEdgeTarget(e)]);
+
+			for (ProposedVertex proposal : tile.crossing)
+			{
+				Vertex src = graph.getVertex(ids[proposal.getSourceVertex().getId()]);
+				stitching.add(new ProposedVertex(proposal.getX(), proposal.getY(), src, proposal.getType()));
+			}
+		}
+
+		generate(stitching);
+	}
+
 	private void initMinorFrontier(Collection<ProposedVertex> initialFrontier)
 	{
-		// add normal of all straight roads
-		graph.getEdges().entrySet().stream().filter((e) -> e.getKey().isMain()).forEach(e ->
+		// edges run from each new vertex to the vertex that proposed it, and subdividing keeps that
+		// direction, so count the edges leaving each vertex
+		int vertexCount = graph.getVertexCount();
+		int[] outDegree = new int[vertexCount];
+		int[] towards = new int[vertexCount];
+		for (int e = 0; e < graph.getEdgeCount(); e++)
 		{
-			Vertex v = e.getKey();
-			Set<Vertex> neighbours = e.getValue();
+			int src = graph.getEdgeSource(e);
+			outDegree[src]++;
+			towards[src] = graph.getEdgeTarget(e);
+		}
 
-			if (neighbours.size() != 1)
-				return;
+		// add normal of all straight roads, i.e. main road vertices leading back to a single parent,
+		// which includes junctions but not the root
+		for (int v = 0; v < vertexCount; v++)
+		{
+			if (graph.getType(v) != RoadType.MAIN || outDegree[v] != 1)
+				continue;
 
-			Vertex n = neighbours.iterator().next();
+			int n = towards[v];
 
-			Vector2D vPos = new Vector2D(v.getPoint().x, v.getPoint().y);
-			Vector2D nPos = new Vector2D(n.getPoint().x, n.getPoint().y);
+			Vector2D vPos = new Vector2D(graph.getX(v), graph.getY(v));
+			Vector2D nPos = new Vector2D(graph.getX(n), graph.getY(n));
 			double angle = Math.atan2(nPos.getY() - vPos.getY(), nPos.getX() - vPos.getX());
 			double length = vPos.distance(nPos);
 
@@ -163,9 +345,10 @@ public class Generator
 			double bx = vPos.getX() - (Math.cos(angle) * length);
 			double by = vPos.getY() - (Math.sin(angle) * length);
 
-			initialFrontier.add(new ProposedVertex(ax, ay, v, RoadType.MINOR));
-			initialFrontier.add(new ProposedVertex(bx, by, v, RoadType.MINOR));
-		});
+			Vertex vertex = graph.getVertex(v);
+			initialFrontier.add(new ProposedVertex(ax, ay, vertex, RoadType.MINOR));
+			initialFrontier.add(new ProposedVertex(bx, by, vertex, RoadType.MINOR));
+		}
 	}
 
 	private void initMainFrontier(Collection<ProposedVertex> initialFrontier)
@@ -173,7 +356,7 @@ public class Generator
 		// add single reference vertex
 		Vertex ref = graph.addVertex(graph.getWidth() / 2, graph.getHeight() / 2, RoadType.MAIN);
 
-		double length = Config.getDouble(Config.Key.MAIN_ROAD_LENGTH);
+		double length = settings.getRoad(RoadType.MAIN).getRoadLength();
 		ProposedVertex a = new ProposedVertex(ref.getPoint().getX(), ref.getPoint().getY() + length, ref, RoadType.MAIN);
 
 		initialFrontier.add(a);
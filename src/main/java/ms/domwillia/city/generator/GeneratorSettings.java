@@ -0,0 +1,176 @@
+package ms.domwillia.city.generator;
+
+import ms.domwillia.city.Config;
+import ms.domwillia.city.RoadType;
+
+/**
+ * Immutable snapshot of the generation settings in {@link Config}, so the generator doesn't look them
+ * up for every proposed vertex and isn't affected by changes made while it's running
+ */
+public final class GeneratorSettings
+{
+	private final Road[] roads;
+
+	private final int mainRoadScaleFactor;
+	private final int mainRoadSubdivideCount;
+	private final double noiseScale;
+	private final int minimumVertices;
+	private final double vertexEpsilon;
+	private final int generationTiles;
+	private final double densityResolution;
+	private final boolean floatNoise;
+
+	private GeneratorSettings()
+	{
+		roads = new Road[RoadType.values().length];
+		roads[RoadType.MAIN.ordinal()] = new Road(
+			Config.getDouble(Config.Key.MAIN_MERGE_THRESHOLD),
+			Config.getDouble(Config.Key.MAIN_ROAD_LENGTH),
+			Config.getDouble(Config.Key.MAIN_ANGLE_VARIATION_MIN),
+			Config.getDouble(Config.Key.MAIN_ANGLE_VARIATION_MAX),
+			Config.getDouble(Config.Key.MAIN_ROAD_CHANCE));
+		roads[RoadType.MINOR.ordinal()] = new Road(
+			Config.getDouble(Config.Key.MINOR_MERGE_THRESHOLD),
+			Config.getDouble(Config.Key.MINOR_ROAD_LENGTH),
+			Config.getDouble(Config.Key.MINOR_ANGLE_VARIATION_MIN),
+			Config.getDouble(Config.Key.MINOR_ANGLE_VARIATION_MAX),
+			Config.getDouble(Config.Key.MINOR_ROAD_CHANCE));
+
+		mainRoadScaleFactor = Config.getInt(Config.Key.MAIN_ROAD_SCALE_FACTOR);
+		mainRoadSubdivideCount = Config.getInt(Config.Key.MAIN_ROAD_SUBDIVIDE_COUNT);
+		noiseScale = Config.getDouble(Config.Key.NOISE_SCALE);
+		minimumVertices = Config.getInt(Config.Key.MINIMUM_VERTICES);
+		vertexEpsilon = Config.getDouble(Config.Key.VERTEX_EPSILON);
+		generationTiles = Config.getInt(Config.Key.GENERATION_TILES);
+		densityResolution = Config.getDouble(Config.Key.DENSITY_RESOLUTION);
+		floatNoise = Config.getBoolean(Config.Key.FLOAT_NOISE);
+	}
+
+	/**
+	 * @return The current settings in {@link Config}
+	 */
+	public static GeneratorSettings fromConfig()
+	{
+		return new GeneratorSettings();
+	}
+
+	public Road getRoad(RoadType type)
+	{
+		return roads[type.ordinal()];
+	}
+
+	/**
+	 * @return The largest merge threshold of any road type
+	 */
+	public double getMaxMergeThreshold()
+	{
+		double max = 0;
+		for (Road road : roads)
+			max = Math.max(max, road.getMergeThreshold());
+		return max;
+	}
+
+	/**
+	 * @return The largest road length of any road type
+	 */
+	public double getMaxRoadLength()
+	{
+		double max = 0;
+		for (Road road : roads)
+			max = Math.max(max, road.getRoadLength());
+		return max;
+	}
+
+	public int getMainRoadScaleFactor()
+	{
+		return mainRoadScaleFactor;
+	}
+
+	public int getMainRoadSubdivideCount()
+	{
+		return mainRoadSubdivideCount;
+	}
+
+	public double getNoiseScale()
+	{
+		return noiseScale;
+	}
+
+	public int getMinimumVertices()
+	{
+		return minimumVertices;
+	}
+
+	public double getVertexEpsilon()
+	{
+		return vertexEpsilon;
+	}
+
+	/**
+	 * @return The number of tiles per side to split the world into, or 1 to generate on a single thread
+	 */
+	public int getGenerationTiles()
+	{
+		return generationTiles;
+	}
+
+	/**
+	 * @return The distance between density samples, or 0 to evaluate the noise for every query
+	 */
+	public double getDensityResolution()
+	{
+		return densityResolution;
+	}
+
+	/**
+	 * @return True if density noise is evaluated in single precision
+	 */
+	public boolean isFloatNoise()
+	{
+		return floatNoise;
+	}
+
+	public static final class Road
+	{
+		private final double mergeThreshold;
+		private final double roadLength;
+		private final double angleVariationMin;
+		private final double angleVariationMax;
+		private final double roadChance;
+
+		private Road(double mergeThreshold, double roadLength, double angleVariationMin,
+		             double angleVariationMax, double roadChance)
+		{
+			this.mergeThreshold = mergeThreshold;
+			this.roadLength = roadLength;
+			this.angleVariationMin = angleVariationMin;
+			this.angleVariationMax = angleVariationMax;
+			this.roadChance = roadChance;
+		}
+
+		public double getMergeThreshold()
+		{
+			return mergeThreshold;
+		}
+
+		public double getRoadLength()
+		{
+			return roadLength;
+		}
+
+		public double getAngleVariationMin()
+		{
+			return angleVariationMin;
+		}
+
+		public double getAngleVariationMax()
+		{
+			return angleVariationMax;
+		}
+
+		public double getRoadChance()
+		{
+			return roadChance;
+		}
+	}
+}
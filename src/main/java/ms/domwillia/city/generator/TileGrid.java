@@ -0,0 +1,141 @@
+package ms.domwillia.city.generator;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Grid of samples answered with bilinear interpolation, split into tiles that are only sampled when
+ * first read. Reads don't lock: a tile sampled by two threads at once is computed twice, identically,
+ * and whichever is stored first is kept
+ */
+class TileGrid
+{
+	// cells per tile side; tiles store one more sample per side so they can be interpolated alone
+	static final int TILE_CELLS = 32;
+	static final int TILE_SAMPLES = TILE_CELLS + 1;
+	static final long TILE_BYTES = TILE_SAMPLES * TILE_SAMPLES * Float.BYTES;
+
+	/**
+	 * Fills in a tile's samples, the first of which lies on cell ({@code tx * TILE_CELLS}, {@code ty * TILE_CELLS})
+	 */
+	@FunctionalInterface
+	interface Sampler
+	{
+		void sample(int tx, int ty, float[] tile);
+	}
+
+	// number of grid cells covered in each direction
+	private final int cellsX, cellsY;
+	private final int tilesX;
+
+	private final AtomicReferenceArray<float[]> tiles;
+	private final Sampler sampler;
+	private final Budget budget;
+
+	/**
+	 * @param budget Limit on the memory used by tiles, or null to keep every tile once sampled
+	 */
+	TileGrid(int cellsX, int cellsY, Sampler sampler, Budget budget)
+	{
+		this.cellsX = cellsX;
+		this.cellsY = cellsY;
+		this.tilesX = Math.max(1, (cellsX + TILE_CELLS - 1) / TILE_CELLS);
+		int tilesY = Math.max(1, (cellsY + TILE_CELLS - 1) / TILE_CELLS);
+		this.tiles = new AtomicReferenceArray<>(tilesX * tilesY);
+		this.sampler = sampler;
+		this.budget = budget;
+	}
+
+	/**
+	 * @return True if the given position, in cells, is covered by the grid
+	 */
+	boolean contains(double gx, double gy)
+	{
+		return gx >= 0 && gy >= 0 && gx < cellsX && gy < cellsY;
+	}
+
+	/**
+	 * @return The value at the given position in cells, which must be covered by the grid
+	 */
+	double getValue(double gx, double gy)
+	{
+		int cx = (int) gx;
+		int cy = (int) gy;
+		double fx = gx - cx;
+		double fy = gy - cy;
+
+		float[] tile = getTile(cx / TILE_CELLS, cy / TILE_CELLS);
+		int i = (cy % TILE_CELLS) * TILE_SAMPLES + cx % TILE_CELLS;
+
+		double top = tile[i] + (tile[i + 1] - tile[i]) * fx;
+		double bottom = tile[i + TILE_SAMPLES] + (tile[i + TILE_SAMPLES + 1] - tile[i + TILE_SAMPLES]) * fx;
+		return top + (bottom - top) * fy;
+	}
+
+	private float[] getTile(int tx, int ty)
+	{
+		int index = ty * tilesX + tx;
+		float[] tile = tiles.get(index);
+		if (tile != null)
+			return tile;
+
+		tile = new float[TILE_SAMPLES * TILE_SAMPLES];
+		sampler.sample(tx, ty, tile);
+		if (!tiles.compareAndSet(index, null, tile))
+		{
+			// if the other thread's tile was evicted in between, hand this one out without caching it
+			float[] existing = tiles.get(index);
+			return existing != null ? existing : tile;
+		}
+
+		if (budget != null)
+			budget.add(this, index, tile);
+		return tile;
+	}
+
+	/**
+	 * Byte budget shared between grids, evicting their tiles oldest first. Only touched when a tile is
+	 * sampled, never on reads
+	 */
+	static class Budget
+	{
+		private final long byteBudget;
+
+		// in creation order, so the first entry is the oldest
+		private final ArrayDeque<Created> created = new ArrayDeque<>();
+
+		Budget(long byteBudget)
+		{
+			this.byteBudget = byteBudget;
+		}
+
+		synchronized long getBytes()
+		{
+			return created.size() * TILE_BYTES;
+		}
+
+		private synchronized void add(TileGrid grid, int index, float[] tile)
+		{
+			created.addLast(new Created(grid, index, tile));
+			while (created.size() * TILE_BYTES > byteBudget && created.size() > 1)
+			{
+				Created oldest = created.removeFirst();
+				oldest.grid.tiles.compareAndSet(oldest.index, oldest.tile, null);
+			}
+		}
+	}
+
+	private static class Created
+	{
+		final TileGrid grid;
+		final int index;
+		final float[] tile;
+
+		Created(TileGrid grid, int index, float[] tile)
+		{
+			this.grid = grid;
+			this.index = index;
+			this.tile = tile;
+		}
+	}
+}
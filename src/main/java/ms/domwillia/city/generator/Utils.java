@@ -1,11 +1,7 @@
 package ms.domwillia.city.generator;
 
-import java.util.Random;
-
 public class Utils
 {
-	public static final Random RANDOM = new Random();
-
 	private Utils()
 	{
 	}
@@ -1,46 +1,52 @@
 package ms.domwillia.city.generator.rules;
 
-import ms.domwillia.city.Config;
-import ms.domwillia.city.RoadType;
 import ms.domwillia.city.generator.Density;
+import ms.domwillia.city.generator.GenerationContext;
+import ms.domwillia.city.generator.GeneratorSettings;
 import ms.domwillia.city.generator.ProposedVertex;
 import ms.domwillia.city.generator.Utils;
 import ms.domwillia.city.graph.Vertex;
-import org.apache.commons.lang3.RandomUtils;
 
 import java.util.List;
+import java.util.Random;
 
 public class GridRule
 {
-	public void suggestVertices(ProposedVertex src, Vertex srcNewlyAdded, List<ProposedVertex> proposed)
+	// left, forward, right
+	private static final double[] GRID_ANGLES = {-Math.PI / 2, 0, Math.PI};
+
+	private final Random random;
+	private final Density density;
+	private final GeneratorSettings settings;
+
+	public GridRule(GenerationContext context, GeneratorSettings settings)
 	{
-		double angleVariationMin = Config.getDouble(src.getType() == RoadType.MAIN ?
-			Config.Key.MAIN_ANGLE_VARIATION_MIN : Config.Key.MINOR_ANGLE_VARIATION_MIN);
-		double angleVariationMax = Config.getDouble(src.getType() == RoadType.MAIN ?
-			Config.Key.MAIN_ANGLE_VARIATION_MAX : Config.Key.MINOR_ANGLE_VARIATION_MAX);
-		double roadChance = Config.getDouble(src.getType() == RoadType.MAIN ?
-			Config.Key.MAIN_ROAD_CHANCE : Config.Key.MINOR_ROAD_CHANCE);
-		double roadLength = Config.getDouble(src.getType() == RoadType.MAIN ?
-			Config.Key.MAIN_ROAD_LENGTH : Config.Key.MINOR_ROAD_LENGTH);
+		this.random = context.getRandom();
+		this.density = context.getDensity();
+		this.settings = settings;
+	}
 
+	public void suggestVertices(ProposedVertex src, Vertex srcNewlyAdded, List<ProposedVertex> proposed)
+	{
+		GeneratorSettings.Road road = settings.getRoad(src.getType());
+		double roadChance = road.getRoadChance();
+		double roadLength = road.getRoadLength();
 
-		double density = Density.getValue(src.getX(), src.getY());
+		double density = this.density.getValue(src.getX(), src.getY());
 
 		double angleVariation = Utils.scale(density,
 			0.0, 1.0,
-			angleVariationMin, angleVariationMax);
+			road.getAngleVariationMin(), road.getAngleVariationMax());
 
 		double angleOffset = density / angleVariation;
 
 		double currentAngle = src.getDirectionAngle();
-		double[] gridAngles = {-Math.PI / 2, 0, Math.PI};
 
-		// left, forward, right
-		for (int i = 0; i < 3; i++)
+		for (int i = 0; i < GRID_ANGLES.length; i++)
 		{
-			if (Utils.RANDOM.nextFloat() < roadChance)
+			if (random.nextFloat() < roadChance)
 			{
-				double proposedAngle = gridAngles[i] + currentAngle + angleOffset;
+				double proposedAngle = GRID_ANGLES[i] + currentAngle + angleOffset;
 				double proposedX = src.getX() + (Math.cos(proposedAngle) * roadLength);
 				double proposedY = src.getY() + (Math.sin(proposedAngle) * roadLength);
 
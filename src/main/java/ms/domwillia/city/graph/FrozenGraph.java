@@ -0,0 +1,141 @@
+package ms.domwillia.city.graph;
+
+import ms.domwillia.city.RoadType;
+
+/**
+ * Immutable snapshot of a {@link Graph}, created by {@link Graph#freeze()}.
+ * Vertex and edge ids match those of the source graph, and each vertex's incident edges are stored
+ * in compressed sparse row form. Nothing is mutable after construction, so instances can be shared
+ * between threads freely
+ */
+public final class FrozenGraph implements GraphView
+{
+	private static final RoadType[] ROAD_TYPES = RoadType.values();
+
+	private final int width, height;
+
+	private final double[] xs, ys;
+	private final byte[] types;
+
+	private final int[] edgeSources, edgeTargets;
+	private final byte[] edgeTypes;
+
+	// incident edges of vertex v are incidence[offsets[v]] until incidence[offsets[v + 1]]
+	private final int[] offsets;
+	private final int[] incidence;
+
+	FrozenGraph(int width, int height, GraphStorage storage)
+	{
+		int count = storage.getVertexCount();
+		int edgeCount = storage.getEdgeCount();
+
+		this.width = width;
+		this.height = height;
+		this.xs = new double[count];
+		this.ys = new double[count];
+		this.types = new byte[count];
+		this.offsets = new int[count + 1];
+		for (int v = 0; v < count; v++)
+		{
+			xs[v] = storage.getX(v);
+			ys[v] = storage.getY(v);
+			types[v] = (byte) storage.getType(v).ordinal();
+			offsets[v + 1] = offsets[v] + storage.getDegree(v);
+		}
+
+		this.edgeSources = new int[edgeCount];
+		this.edgeTargets = new int[edgeCount];
+		this.edgeTypes = new byte[edgeCount];
+		for (int e = 0; e < edgeCount; e++)
+		{
+			edgeSources[e] = storage.getEdgeSource(e);
+			edgeTargets[e] = storage.getEdgeTarget(e);
+			edgeTypes[e] = (byte) storage.getEdgeType(e).ordinal();
+		}
+
+		this.incidence = new int[offsets[count]];
+		for (int v = 0; v < count; v++)
+			for (int i = 0; i < storage.getDegree(v); i++)
+				incidence[offsets[v] + i] = storage.getIncidentEdge(v, i);
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	@Override
+	public int getVertexCount()
+	{
+		return xs.length;
+	}
+
+	@Override
+	public double getX(int id)
+	{
+		return xs[id];
+	}
+
+	@Override
+	public double getY(int id)
+	{
+		return ys[id];
+	}
+
+	@Override
+	public RoadType getType(int id)
+	{
+		return ROAD_TYPES[types[id]];
+	}
+
+	@Override
+	public int getDegree(int id)
+	{
+		return offsets[id + 1] - offsets[id];
+	}
+
+	@Override
+	public int getIncidentEdge(int id, int index)
+	{
+		return incidence[offsets[id] + index];
+	}
+
+	@Override
+	public int getNeighbour(int id, int index)
+	{
+		int edge = incidence[offsets[id] + index];
+		int source = edgeSources[edge];
+		return source == id ? edgeTargets[edge] : source;
+	}
+
+	@Override
+	public int getEdgeCount()
+	{
+		return edgeSources.length;
+	}
+
+	@Override
+	public int getEdgeSource(int edge)
+	{
+		return edgeSources[edge];
+	}
+
+	@Override
+	public int getEdgeTarget(int edge)
+	{
+		return edgeTargets[edge];
+	}
+
+	@Override
+	public RoadType getEdgeType(int edge)
+	{
+		return ROAD_TYPES[edgeTypes[edge]];
+	}
+}
@@ -1,200 +1,398 @@
 package ms.domwillia.city.graph;
 
-import com.jwetherell.algorithms.data_structures.KdTree;
 import ms.domwillia.city.Config;
 import ms.domwillia.city.RoadType;
+import ms.domwillia.city.export.PngEncoder;
 import ms.domwillia.city.generator.Density;
+import ms.domwillia.city.generator.DensityField;
+import ms.domwillia.city.generator.DensityPyramid;
 import org.apache.commons.math3.geometry.euclidean.twod.Vector2D;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-public class Graph
+public class Graph implements GraphView
 {
-	private Map<Point2D, Vertex> vertices;
-	private Map<Vertex, Set<Vertex>> edges;
+	private static final int NOISE_BAND_ROWS = 16;
+	private static final long PYRAMID_BYTES = 32L * 1024 * 1024;
 
+	// opaque grey for each noise level
+	private static final int[] GREYS = new int[256];
+
+	static
+	{
+		for (int i = 0; i < GREYS.length; i++)
+			GREYS[i] = 0xFF000000 | i << 16 | i << 8 | i;
+	}
+
+	private GraphStorage storage;
+
+	private int originX, originY;
 	private int width, height;
-	private KdTree<SpatialVertex> kdTree;
+	private SpatialGrid spatial;
+
+	private final double vertexEpsilon;
+	private final double spatialCellSize;
+
+	// noise to render behind the roads, if any
+	private Density density;
+
+	// filtered density for zoomed out renders, built on first use
+	private DensityPyramid pyramid;
 
 	public Graph(int width, int height)
+	{
+		// merge lookups never search further than the largest threshold, so a 3x3 block of cells covers them
+		this(0, 0, width, height, Config.getDouble(Config.Key.VERTEX_EPSILON), Math.max(
+			Config.getDouble(Config.Key.MAIN_MERGE_THRESHOLD),
+			Config.getDouble(Config.Key.MINOR_MERGE_THRESHOLD)));
+	}
+
+	/**
+	 * Creates a graph covering only the given region of the world
+	 *
+	 * @param vertexEpsilon   Positions that round to the same multiple of this are the same vertex
+	 * @param spatialCellSize Size of the buckets used for radius queries, ideally the largest radius used
+	 */
+	public Graph(int originX, int originY, int width, int height, double vertexEpsilon, double spatialCellSize)
 	{
 		if (width < 10 || height < 10)
 			throw new IllegalArgumentException("Invalid graph size");
 
+		this.originX = originX;
+		this.originY = originY;
 		this.width = width;
 		this.height = height;
-		this.vertices = new HashMap<>();
-		this.edges = new HashMap<>();
-		this.kdTree = new KdTree<>();
+		this.vertexEpsilon = vertexEpsilon;
+		this.spatialCellSize = Math.max(1.0, spatialCellSize);
+		this.storage = new GraphStorage(0, vertexEpsilon);
+		this.spatial = createSpatialGrid(0);
+	}
+
+	private SpatialGrid createSpatialGrid(int capacity)
+	{
+		return new SpatialGrid(storage, originX, originY, width, height, spatialCellSize, capacity);
+	}
+
+	/**
+	 * @return A new graph with the same vertices and edges as the given one, keeping their ids
+	 */
+	public static Graph copyOf(GraphView view)
+	{
+		Graph graph = new Graph(view.getWidth(), view.getHeight());
+
+		// every degree is known up front, so each vertex's incident edges can be laid out once
+		int incidence = 0;
+		for (int id = 0; id < view.getVertexCount(); id++)
+			incidence += GraphStorage.getBlockLength(view.getDegree(id));
+		graph.storage = new GraphStorage(view.getVertexCount(), incidence, graph.vertexEpsilon);
+
+		for (int id = 0; id < view.getVertexCount(); id++)
+		{
+			graph.addVertex(view.getX(id), view.getY(id), view.getType(id), false);
+			graph.storage.reserveIncidence(id, view.getDegree(id));
+		}
+
+		for (int e = 0; e < view.getEdgeCount(); e++)
+			graph.storage.addEdge(view.getEdgeSource(e), view.getEdgeTarget(e));
+
+		graph.spatial = graph.createSpatialGrid(graph.storage.getVertexCount());
+		graph.spatial.load();
+		return graph;
 	}
 
 	public Vertex addVertex(double x, double y, RoadType type)
 	{
-		return addVertex(new Point2D.Double(x, y), type);
+		return getVertex(addVertex(x, y, type, true));
 	}
 
 	public Vertex addVertex(Point2D.Double point, RoadType type)
 	{
-		// bad coords
-		if (!isInRange(point.x, point.y))
-			throw new IllegalArgumentException("Vertex out of range (" + point.x + ", " + point.y + ")");
+		return addVertex(point.x, point.y, type);
+	}
 
-		// fetch existing
-		Vertex v = vertices.get(point);
+	/**
+	 * @param index If false, the spatial index must be rebuilt before it is next queried
+	 * @return The id of the new or existing vertex
+	 */
+	private int addVertex(double x, double y, RoadType type, boolean index)
+	{
+		// bad coords
+		if (!isInRange(x, y))
+			throw new IllegalArgumentException("Vertex out of range (" + x + ", " + y + ")");
 
-		if (v == null)
-		{
-			v = new Vertex(point.x, point.y, type);
-			vertices.put(point, v);
+		int count = storage.getVertexCount();
+		int id = storage.addVertex(x, y, type);
 
-			kdTree.add(new SpatialVertex(point.x, point.y));
-		}
+		if (index && id == count)
+			spatial.insert(id);
 
-		return v;
+		return id;
 	}
 
 	public boolean hasVertex(double x, double y)
 	{
-		return hasVertex(new Point2D.Double(x, y));
+		return storage.find(x, y) != -1;
+	}
+
+	/**
+	 * @return The id of the vertex at the given position, or -1 if there is none
+	 */
+	public int findVertex(double x, double y)
+	{
+		return storage.find(x, y);
 	}
 
 	public boolean hasVertex(Point2D.Double point)
 	{
-		return vertices.containsKey(point);
+		return hasVertex(point.x, point.y);
 	}
 
-	public Collection<Vertex> getVertices()
+	/**
+	 * @return A view of all vertices, each created on access
+	 */
+	public List<Vertex> getVertices()
 	{
-		return vertices.values();
+		return new AbstractList<Vertex>()
+		{
+			@Override
+			public Vertex get(int index)
+			{
+				return getVertex(index);
+			}
+
+			@Override
+			public int size()
+			{
+				return storage.getVertexCount();
+			}
+		};
 	}
 
+	/**
+	 * @return A copy of the neighbours of every vertex that has edges, built on each call.
+	 * Edges are undirected so each appears under both of its vertices
+	 */
 	public Map<Vertex, Set<Vertex>> getEdges()
 	{
+		Map<Vertex, Set<Vertex>> edges = new LinkedHashMap<>();
+		for (int id = 0; id < storage.getVertexCount(); id++)
+		{
+			int degree = storage.getDegree(id);
+			if (degree == 0)
+				continue;
+
+			Set<Vertex> neighbours = new LinkedHashSet<>();
+			for (int i = 0; i < degree; i++)
+				neighbours.add(getVertex(storage.getNeighbour(id, i)));
+
+			edges.put(getVertex(id), neighbours);
+		}
+
 		return edges;
 	}
 
-	public void addEdge(Vertex a, Vertex b)
+	/**
+	 * @return The id of the new or existing undirected edge, or -1 if both vertices are the same
+	 */
+	public int addEdge(Vertex a, Vertex b)
 	{
-		Set<Vertex> vertices = edges.computeIfAbsent(a, k -> new HashSet<>());
-		vertices.add(b);
+		return addEdge(a.getId(), b.getId());
 	}
 
-	public void removeEdge(Vertex a, Vertex b)
+	/**
+	 * @return The id of the new or existing undirected edge, or -1 if both vertices are the same
+	 */
+	public int addEdge(int a, int b)
 	{
-		Set<Vertex> vertices = edges.get(a);
-		if (vertices != null)
-			vertices.remove(b);
-
+		return storage.addEdge(a, b);
 	}
 
 	public boolean isInRange(double x, double y)
 	{
-		return x >= 0 && y >= 0 && x < width && y < height;
+		return x >= originX && y >= originY && x < originX + width && y < originY + height;
 	}
 
-	private void drawOval(Graphics2D g, Point2D.Double point, int radius, boolean fill)
+	public BufferedImage render()
 	{
-		if (fill)
-			g.fillOval((int) point.getX() - radius / 2, (int) (point.getY() - radius / 2), radius, radius);
-		else
-			g.drawOval((int) point.getX() - radius / 2, (int) (point.getY() - radius / 2), radius, radius);
+		return render(1.0);
 	}
 
-	public BufferedImage render()
+	/**
+	 * Renders the graph resized by the given factor. Below full size the noise background is read
+	 * from a {@link DensityPyramid}, so it costs in proportion to the image rather than the world
+	 */
+	public BufferedImage render(double scale)
 	{
-		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		if (!(scale > 0))
+			throw new IllegalArgumentException("Invalid render scale " + scale);
+
+		int imageWidth = Math.max(1, (int) Math.ceil(width * scale));
+		int imageHeight = Math.max(1, (int) Math.ceil(height * scale));
+		BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D g = image.createGraphics();
 
 		// background
 		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, width, height);
+		g.fillRect(0, 0, imageWidth, imageHeight);
 
 		// noise
-		if (Config.getBoolean(Config.Key.RENDER_NOISE))
-		{
-			for (int x = 0; x < width; x++)
-			{
-				for (int y = 0; y < height; y++)
-				{
-					double noise = Density.getValue(x, y);
-					int pixel = (int) (noise * 255);
-					image.setRGB(x, y, new Color(pixel, pixel, pixel).getRGB());
-				}
-			}
-		}
+		if (density != null && Config.getBoolean(Config.Key.RENDER_NOISE))
+			renderNoise(image, scale);
 
-		// vertices
-		g.setColor(Config.getColour(Config.Key.VERTEX_RENDER_COLOUR));
-		for (Vertex v : vertices.values())
-		{
-			drawOval(g, v.getPoint(), Config.getInt(Config.Key.VERTEX_RENDER_RADIUS), true);
-		}
+		g.dispose();
+
+		new TiledRenderer(storage, originX, originY, scale).draw(image);
+
+		return image;
+	}
 
-		Stroke mainStroke = new BasicStroke(Config.getInt(Config.Key.ROAD_MAIN_RENDER_THICKNESS));
-		Stroke minorStroke = new BasicStroke(Config.getInt(Config.Key.ROAD_MINOR_RENDER_THICKNESS));
+	/**
+	 * Fills the image with the density as grey, writing straight into its pixel array a band of rows at a time
+	 */
+	private void renderNoise(BufferedImage image, double scale)
+	{
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int imageWidth = image.getWidth();
+		int imageHeight = image.getHeight();
 
-		// edges
-		for (Map.Entry<Vertex, Set<Vertex>> e : edges.entrySet())
+		// each pixel covers more than one unit of the world when zoomed out, so read a filtered level
+		DensityPyramid pyramid = scale < 1.0 ? getPyramid() : null;
+		double footprint = 1.0 / scale;
+
+		List<Callable<Void>> bands = new ArrayList<>();
+		for (int from = 0; from < imageHeight; from += NOISE_BAND_ROWS)
 		{
-			Vertex v = e.getKey();
-			for (Vertex neighbour : e.getValue())
+			int start = from;
+			int end = Math.min(imageHeight, from + NOISE_BAND_ROWS);
+			bands.add(() ->
 			{
-				if (v.isMain() && neighbour.isMain())
-				{
-					g.setColor(Config.getColour(Config.Key.ROAD_MAIN_RENDER_COLOUR));
-					g.setStroke(mainStroke);
-				} else
+				for (int y = start; y < end; y++)
 				{
-					g.setColor(Config.getColour(Config.Key.ROAD_MINOR_RENDER_COLOUR));
-					g.setStroke(minorStroke);
+					int row = y * imageWidth;
+					double worldY = originY + y / scale;
+					for (int x = 0; x < imageWidth; x++)
+					{
+						double worldX = originX + x / scale;
+						double noise = pyramid != null
+							? pyramid.getValue(worldX, worldY, footprint)
+							: density.getValue(worldX, worldY);
+						pixels[row + x] = GREYS[(int) (noise * 255)];
+					}
 				}
+				return null;
+			});
+		}
 
-				Point2D.Double vp = v.getPoint();
-				Point2D.Double np = neighbour.getPoint();
-				g.drawLine((int) vp.x, (int) vp.y, (int) np.x, (int) np.y);
+		runAll(bands, "render noise");
+	}
 
+	/**
+	 * Runs the tasks on the common fork-join pool and waits for them all to finish
+	 */
+	static void runAll(List<Callable<Void>> tasks, String action)
+	{
+		for (Future<Void> task : ForkJoinPool.commonPool().invokeAll(tasks))
+		{
+			try
+			{
+				task.get();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while trying to " + action, e);
+			} catch (ExecutionException e)
+			{
+				throw new IllegalStateException("Failed to " + action, e.getCause());
 			}
 		}
-
-		return image;
 	}
 
 	public void export(String dir, String nameFormat, int index)
 	{
-		File out = Paths.get(dir, String.format(nameFormat, index)).toFile();
+		export(Paths.get(dir, String.format(nameFormat, index)).toFile());
+	}
+
+	public void export(File out)
+	{
+		exportImage(render(), out);
+	}
 
+	/**
+	 * Writes an already rendered image as a PNG with the default {@link PngEncoder}, replacing any existing file.
+	 * Safe to call from many threads at once, as each call uses its own stream
+	 */
+	public static void exportImage(BufferedImage image, File out)
+	{
+		exportImage(image, out, new PngEncoder());
+	}
+
+	public static void exportImage(BufferedImage image, File out, PngEncoder encoder)
+	{
 		File parent = out.getParentFile();
-		if (!parent.exists())
-			parent.mkdir();
+		if (parent != null)
+			parent.mkdirs();
 
-		out.delete();
+		try
+		{
+			encoder.write(image, out);
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException("Failed to export to " + out, e);
+		}
+
+		System.out.printf("%d: exported to '%s'\n", Thread.currentThread().getId(), out.getAbsolutePath());
+	}
 
-		BufferedImage image = render();
-		synchronized (Graph.class)
+	/**
+	 * @return An immutable snapshot of the graph in its current state
+	 */
+	public FrozenGraph freeze()
+	{
+		return new FrozenGraph(width, height, storage);
+	}
+
+	public Density getDensity()
+	{
+		return density;
+	}
+
+	private synchronized DensityPyramid getPyramid()
+	{
+		if (pyramid == null)
 		{
-			try
-			{
-				ImageIO.write(image, "png", out);
-				System.out.printf("%d: exported to '%s'\n", Thread.currentThread().getId(), out.getAbsolutePath());
-			} catch (IOException e)
-			{
-				e.printStackTrace();
-			}
+			// coarse levels start from the spacing of the field full size renders read
+			double resolution = density instanceof DensityField ? ((DensityField) density).getResolution() : 1.0;
+			pyramid = new DensityPyramid(density, resolution, originX + width, originY + height, PYRAMID_BYTES);
 		}
+		return pyramid;
+	}
+
+	public void setDensity(Density density)
+	{
+		this.density = density;
+		this.pyramid = null;
 	}
 
+	@Override
 	public int getWidth()
 	{
 		return width;
 	}
 
+	@Override
 	public int getHeight()
 	{
 		return height;
@@ -203,60 +401,142 @@ public class Graph
 
 	public void scaleAndSubdivide(int factor, int subdivisions)
 	{
+		pyramid = null;
+		originX *= factor;
+		originY *= factor;
 		width *= factor;
 		height *= factor;
 
-		Map<Vertex, Set<Vertex>> edgesCopy = new LinkedHashMap<>(edges);
+		GraphStorage old = storage;
+		storage = new GraphStorage(old.getVertexCount() * subdivisions, vertexEpsilon);
 
-		edges.clear();
-		vertices.clear();
-		for (SpatialVertex vertex : kdTree)
-			kdTree.remove(vertex);
-
-		edgesCopy.forEach((srcVertex, value) ->
+		int[] newVertices = new int[subdivisions + 1];
+		for (int e = 0; e < old.getEdgeCount(); e++)
 		{
-			Point2D.Double src = new Point2D.Double(srcVertex.getPoint().x * factor, srcVertex.getPoint().y * factor);
+			int src = old.getEdgeSource(e);
+			int neighbour = old.getEdgeTarget(e);
+			RoadType type = old.getType(src);
+
+			Vector2D self = new Vector2D(old.getX(src) * factor, old.getY(src) * factor);
+			Vector2D neighbourPos = new Vector2D(old.getX(neighbour) * factor, old.getY(neighbour) * factor);
+			Vector2D direction = neighbourPos.subtract(self).normalize();
+
+			double length = self.distance(neighbourPos);
+			double each = length / subdivisions;
 
-			Vector2D self = new Vector2D(src.x, src.y);
-			value.forEach(neighbour ->
+			for (int i = 0; i <= subdivisions; i++)
 			{
-				Vector2D neighbourPos = new Vector2D(neighbour.getPoint().x * factor, neighbour.getPoint().y * factor);
-				Vector2D direction = neighbourPos.subtract(self).normalize();
+				Vector2D newPos = direction.scalarMultiply(each * i).add(self);
+				newVertices[i] = addVertex(newPos.getX(), newPos.getY(), type, false);
+			}
 
-				double length = self.distance(neighbourPos);
-				double each = length / subdivisions;
+			for (int i = 0; i < newVertices.length - 1; i++)
+			{
+				storage.addEdge(newVertices[i], newVertices[i + 1]);
+			}
+		}
 
-				Vertex[] newVertices = new Vertex[subdivisions + 1];
-				for (int i = 0; i <= subdivisions; i++)
-				{
-					Vector2D newPos = direction.scalarMultiply(each * i).add(self);
-					Vertex next = addVertex(newPos.getX(), newPos.getY(), srcVertex.getType());
-					newVertices[i] = next;
-				}
+		spatial = createSpatialGrid(storage.getVertexCount());
+		spatial.load();
+	}
 
-				for (int i = 0; i < newVertices.length - 1; i++)
-				{
-					addEdge(newVertices[i], newVertices[i + 1]);
-				}
-			});
-		});
+	/**
+	 * @return A new handle on the given vertex
+	 */
+	public Vertex getVertex(int id)
+	{
+		return new Vertex(id, storage.getX(id), storage.getY(id), storage.getType(id));
 	}
 
-	public Point2D[] getNearestNeighbours(int k, Point2D point)
+	@Override
+	public int getVertexCount()
 	{
-		SpatialVertex value = new SpatialVertex(point.getX(), point.getY());
-		Collection<SpatialVertex> result = kdTree.nearestNeighbourSearch(k, value);
-		return result.stream()
-			.map(v -> new Point2D.Double(v.getX(), v.getY()))
-			.toArray(Point2D.Double[]::new);
+		return storage.getVertexCount();
 	}
 
-	private class SpatialVertex extends KdTree.XYZPoint
+	@Override
+	public double getX(int id)
 	{
-		SpatialVertex(double x, double y)
-		{
-			super(x, y);
-		}
+		return storage.getX(id);
+	}
+
+	@Override
+	public double getY(int id)
+	{
+		return storage.getY(id);
+	}
+
+	@Override
+	public RoadType getType(int id)
+	{
+		return storage.getType(id);
+	}
+
+	@Override
+	public int getDegree(int id)
+	{
+		return storage.getDegree(id);
+	}
+
+	@Override
+	public int getIncidentEdge(int id, int index)
+	{
+		return storage.getIncidentEdge(id, index);
+	}
+
+	@Override
+	public int getNeighbour(int id, int index)
+	{
+		return storage.getNeighbour(id, index);
+	}
+
+	@Override
+	public int getEdgeCount()
+	{
+		return storage.getEdgeCount();
+	}
+
+	@Override
+	public int getEdgeSource(int edge)
+	{
+		return storage.getEdgeSource(edge);
+	}
+
+	@Override
+	public int getEdgeTarget(int edge)
+	{
+		return storage.getEdgeTarget(edge);
+	}
+
+	@Override
+	public RoadType getEdgeType(int edge)
+	{
+		return storage.getEdgeType(edge);
+	}
+
+	/**
+	 * Calls the visitor for every vertex within the given radius, in no particular order
+	 */
+	public void forEachWithin(double x, double y, double radius, VertexVisitor visitor)
+	{
+		spatial.forEachWithin(x, y, radius, visitor);
+	}
+
+	/**
+	 * @return The id of the closest vertex within the given radius, or -1 if there are none
+	 */
+	public int closestWithin(double x, double y, double radius)
+	{
+		return closestWithin(x, y, radius, -1);
+	}
+
+	/**
+	 * @param exclude Id of a vertex to ignore, or -1
+	 * @return The id of the closest vertex within the given radius, or -1 if there are none
+	 */
+	public int closestWithin(double x, double y, double radius, int exclude)
+	{
+		return spatial.closest(x, y, radius, exclude);
 	}
 
 }
@@ -0,0 +1,193 @@
+package ms.domwillia.city.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary format for road networks, read back by {@link MappedGraph}.
+ * All values are little-endian. The header is followed by these blocks, each starting on an 8 byte boundary:
+ * <ol>
+ *     <li>coordinates: x and y doubles for each vertex</li>
+ *     <li>vertex types: a {@link ms.domwillia.city.RoadType} ordinal byte for each vertex</li>
+ *     <li>edges: source and target ints for each edge</li>
+ *     <li>edge types: a road type ordinal byte for each edge</li>
+ *     <li>adjacency offsets: vertex count + 1 ints, so vertex v's incident edges are from offsets[v] until offsets[v + 1]</li>
+ *     <li>adjacency: incident edge ids, two for each edge</li>
+ * </ol>
+ */
+public final class GraphFile
+{
+	static final int MAGIC = 0x52474452; // "RDGR"
+	static final int VERSION = 1;
+
+	// magic, version, width, height, vertex count, edge count, then the offset of each block
+	static final int BLOCK_COUNT = 6;
+	static final int HEADER_SIZE = 6 * Integer.BYTES + BLOCK_COUNT * Long.BYTES;
+
+	static final int COORDINATES = 0;
+	static final int VERTEX_TYPES = 1;
+	static final int EDGES = 2;
+	static final int EDGE_TYPES = 3;
+	static final int ADJACENCY_OFFSETS = 4;
+	static final int ADJACENCY = 5;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private GraphFile()
+	{
+	}
+
+	/**
+	 * Writes the graph to the given file, replacing it if it exists. Blocks are streamed out in order,
+	 * so only a small buffer is needed however big the graph is
+	 */
+	public static void write(GraphView graph, File file) throws IOException
+	{
+		int vertexCount = graph.getVertexCount();
+		int edgeCount = graph.getEdgeCount();
+
+		long[] offsets = blockOffsets(vertexCount, edgeCount);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(graph.getWidth());
+			buffer.putInt(graph.getHeight());
+			buffer.putInt(vertexCount);
+			buffer.putInt(edgeCount);
+			for (long offset : offsets)
+				buffer.putLong(offset);
+
+			long position = HEADER_SIZE;
+
+			position = pad(channel, buffer, position, offsets[COORDINATES]);
+			for (int v = 0; v < vertexCount; v++)
+			{
+				ensure(channel, buffer, 2 * Double.BYTES);
+				buffer.putDouble(graph.getX(v));
+				buffer.putDouble(graph.getY(v));
+			}
+			position += (long) vertexCount * 2 * Double.BYTES;
+
+			position = pad(channel, buffer, position, offsets[VERTEX_TYPES]);
+			for (int v = 0; v < vertexCount; v++)
+			{
+				ensure(channel, buffer, 1);
+				buffer.put((byte) graph.getType(v).ordinal());
+			}
+			position += vertexCount;
+
+			position = pad(channel, buffer, position, offsets[EDGES]);
+			for (int e = 0; e < edgeCount; e++)
+			{
+				ensure(channel, buffer, 2 * Integer.BYTES);
+				buffer.putInt(graph.getEdgeSource(e));
+				buffer.putInt(graph.getEdgeTarget(e));
+			}
+			position += (long) edgeCount * 2 * Integer.BYTES;
+
+			position = pad(channel, buffer, position, offsets[EDGE_TYPES]);
+			for (int e = 0; e < edgeCount; e++)
+			{
+				ensure(channel, buffer, 1);
+				buffer.put((byte) graph.getEdgeType(e).ordinal());
+			}
+			position += edgeCount;
+
+			position = pad(channel, buffer, position, offsets[ADJACENCY_OFFSETS]);
+			int offset = 0;
+			for (int v = 0; v <= vertexCount; v++)
+			{
+				ensure(channel, buffer, Integer.BYTES);
+				buffer.putInt(offset);
+				if (v < vertexCount)
+					offset += graph.getDegree(v);
+			}
+			position += (long) (vertexCount + 1) * Integer.BYTES;
+
+			if (offset != 2 * edgeCount)
+				throw new IllegalArgumentException("Vertex degrees sum to " + offset + ", expected " + 2 * edgeCount);
+
+			pad(channel, buffer, position, offsets[ADJACENCY]);
+			for (int v = 0; v < vertexCount; v++)
+			{
+				for (int i = 0; i < graph.getDegree(v); i++)
+				{
+					ensure(channel, buffer, Integer.BYTES);
+					buffer.putInt(graph.getIncidentEdge(v, i));
+				}
+			}
+
+			flush(channel, buffer);
+		}
+	}
+
+	/**
+	 * @return The offset of each block in a file with the given counts
+	 */
+	static long[] blockOffsets(int vertexCount, int edgeCount)
+	{
+		long[] sizes = new long[BLOCK_COUNT];
+		sizes[COORDINATES] = (long) vertexCount * 2 * Double.BYTES;
+		sizes[VERTEX_TYPES] = vertexCount;
+		sizes[EDGES] = (long) edgeCount * 2 * Integer.BYTES;
+		sizes[EDGE_TYPES] = edgeCount;
+		sizes[ADJACENCY_OFFSETS] = (long) (vertexCount + 1) * Integer.BYTES;
+		sizes[ADJACENCY] = (long) edgeCount * 2 * Integer.BYTES;
+
+		long[] offsets = new long[BLOCK_COUNT];
+		long position = HEADER_SIZE;
+		for (int i = 0; i < BLOCK_COUNT; i++)
+		{
+			offsets[i] = align(position);
+			position = offsets[i] + sizes[i];
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return The total size of a file with the given counts
+	 */
+	static long fileSize(int vertexCount, int edgeCount)
+	{
+		return blockOffsets(vertexCount, edgeCount)[ADJACENCY] + (long) edgeCount * 2 * Integer.BYTES;
+	}
+
+	private static long align(long position)
+	{
+		return (position + 7) & ~7L;
+	}
+
+	private static long pad(FileChannel channel, ByteBuffer buffer, long position, long target) throws IOException
+	{
+		while (position < target)
+		{
+			ensure(channel, buffer, 1);
+			buffer.put((byte) 0);
+			position++;
+		}
+		return position;
+	}
+
+	private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException
+	{
+		if (buffer.remaining() < bytes)
+			flush(channel, buffer);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,325 @@
+package ms.domwillia.city.graph;
+
+import ms.domwillia.city.RoadType;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays backing store for a {@link Graph}. Vertices and undirected edges are addressed by
+ * dense ids, with their coordinates, road types and incidence held in primitive arrays rather than
+ * an object per vertex. Nothing is ever removed, so ids never change.
+ * <p>
+ * Each vertex's incident edges sit in a power of two sized block of one shared pool, and a block that
+ * is outgrown is recycled for another vertex. So beyond its entry in the position lookup, a vertex
+ * costs 26 bytes across the arrays plus 4 bytes per slot of its block, before any spare room the
+ * arrays have grown into
+ */
+class GraphStorage
+{
+	private static final int INITIAL_CAPACITY = 256;
+	// log2 of the smallest incidence block
+	private static final int INITIAL_BLOCK_SIZE = 1;
+	private static final RoadType[] ROAD_TYPES = RoadType.values();
+
+	private double[] xs, ys;
+	private byte[] types;
+
+	// incident edges of each vertex are pool[blockStarts[id]] onwards, of which there is room for
+	// 1 << blockSizes[id] and the first degrees[id] are used. A block size of 0 means no block yet
+	private int[] pool;
+	private int poolSize;
+	private int[] blockStarts;
+	private byte[] blockSizes;
+	private int[] degrees;
+
+	// start of the first free block of each size, with the next one in its first slot, or -1
+	private final int[] freeBlocks = new int[Integer.SIZE];
+
+	private int vertexCount;
+
+	private int[] edgeSources, edgeTargets;
+	private byte[] edgeTypes;
+	private int edgeCount;
+
+	// vertex ids keyed by their quantized coordinates
+	private final LongIntHashMap lookup;
+	private final double inverseEpsilon;
+
+	/**
+	 * @param epsilon Positions that round to the same multiple of this are considered the same vertex
+	 */
+	GraphStorage(int capacity, double epsilon)
+	{
+		this(capacity, Math.max(INITIAL_CAPACITY, capacity) * 4, epsilon);
+	}
+
+	/**
+	 * @param incidenceCapacity Initial number of incident edge slots across all vertices, see {@link #getBlockLength(int)}
+	 * @param epsilon           Positions that round to the same multiple of this are considered the same vertex
+	 */
+	GraphStorage(int capacity, int incidenceCapacity, double epsilon)
+	{
+		if (epsilon <= 0)
+			throw new IllegalArgumentException("Invalid vertex epsilon " + epsilon);
+
+		capacity = Math.max(INITIAL_CAPACITY, capacity);
+		this.xs = new double[capacity];
+		this.ys = new double[capacity];
+		this.types = new byte[capacity];
+		this.pool = new int[Math.max(1 << INITIAL_BLOCK_SIZE, incidenceCapacity)];
+		this.blockStarts = new int[capacity];
+		this.blockSizes = new byte[capacity];
+		this.degrees = new int[capacity];
+		Arrays.fill(freeBlocks, -1);
+
+		this.edgeSources = new int[capacity];
+		this.edgeTargets = new int[capacity];
+		this.edgeTypes = new byte[capacity];
+
+		this.lookup = new LongIntHashMap(capacity);
+		this.inverseEpsilon = 1.0 / epsilon;
+	}
+
+	/**
+	 * @return The id of the vertex at the given position, creating it if necessary
+	 */
+	int addVertex(double x, double y, RoadType type)
+	{
+		long key = quantize(x, y);
+		int existing = lookup.get(key);
+		if (existing != -1)
+			return existing;
+
+		int id = vertexCount++;
+		if (id == xs.length)
+			grow();
+
+		xs[id] = x;
+		ys[id] = y;
+		types[id] = (byte) type.ordinal();
+
+		lookup.put(key, id);
+		return id;
+	}
+
+	/**
+	 * @return The id of the vertex at the given position, or -1 if there is none
+	 */
+	int find(double x, double y)
+	{
+		return lookup.get(quantize(x, y));
+	}
+
+	int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	double getX(int id)
+	{
+		return xs[id];
+	}
+
+	double getY(int id)
+	{
+		return ys[id];
+	}
+
+	RoadType getType(int id)
+	{
+		return ROAD_TYPES[types[id]];
+	}
+
+	/**
+	 * @return The id of the new or existing edge between the two vertices, or -1 if they are the same
+	 */
+	int addEdge(int a, int b)
+	{
+		if (a == b)
+			return -1;
+
+		int existing = findEdge(a, b);
+		if (existing != -1)
+			return existing;
+
+		int edge = edgeCount++;
+		if (edge == edgeSources.length)
+		{
+			int capacity = edge * 2;
+			edgeSources = Arrays.copyOf(edgeSources, capacity);
+			edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+			edgeTypes = Arrays.copyOf(edgeTypes, capacity);
+		}
+
+		edgeSources[edge] = a;
+		edgeTargets[edge] = b;
+
+		RoadType type = getType(a) == RoadType.MAIN && getType(b) == RoadType.MAIN ? RoadType.MAIN : RoadType.MINOR;
+		edgeTypes[edge] = (byte) type.ordinal();
+
+		addIncident(a, edge);
+		addIncident(b, edge);
+		return edge;
+	}
+
+	/**
+	 * @return The id of the edge between the two vertices, in either direction, or -1
+	 */
+	int findEdge(int a, int b)
+	{
+		// scan whichever vertex has fewer edges
+		if (degrees[b] < degrees[a])
+		{
+			int tmp = a;
+			a = b;
+			b = tmp;
+		}
+
+		int start = blockStarts[a];
+		for (int i = 0; i < degrees[a]; i++)
+		{
+			int edge = pool[start + i];
+			if (edgeSources[edge] == b || edgeTargets[edge] == b)
+				return edge;
+		}
+
+		return -1;
+	}
+
+	int getDegree(int id)
+	{
+		return degrees[id];
+	}
+
+	int getIncidentEdge(int id, int index)
+	{
+		return pool[blockStarts[id] + index];
+	}
+
+	int getNeighbour(int id, int index)
+	{
+		int edge = pool[blockStarts[id] + index];
+		int source = edgeSources[edge];
+		return source == id ? edgeTargets[edge] : source;
+	}
+
+	int getEdgeCount()
+	{
+		return edgeCount;
+	}
+
+	int getEdgeSource(int edge)
+	{
+		return edgeSources[edge];
+	}
+
+	int getEdgeTarget(int edge)
+	{
+		return edgeTargets[edge];
+	}
+
+	RoadType getEdgeType(int edge)
+	{
+		return ROAD_TYPES[edgeTypes[edge]];
+	}
+
+	private void addIncident(int id, int edge)
+	{
+		int degree = degrees[id];
+		int size = blockSizes[id];
+
+		if (size == 0)
+		{
+			blockStarts[id] = allocateBlock(INITIAL_BLOCK_SIZE);
+			blockSizes[id] = INITIAL_BLOCK_SIZE;
+		} else if (degree == 1 << size)
+		{
+			int start = allocateBlock(size + 1);
+			System.arraycopy(pool, blockStarts[id], pool, start, degree);
+			freeBlock(blockStarts[id], size);
+			blockStarts[id] = start;
+			blockSizes[id] = (byte) (size + 1);
+		}
+
+		pool[blockStarts[id] + degree] = edge;
+		degrees[id]++;
+	}
+
+	/**
+	 * Gives a vertex without edges yet room for the given number of them up front, so adding them never
+	 * moves its block
+	 */
+	void reserveIncidence(int id, int degree)
+	{
+		if (blockSizes[id] != 0)
+			return;
+
+		int size = getBlockSize(degree);
+		blockStarts[id] = allocateBlock(size);
+		blockSizes[id] = (byte) size;
+	}
+
+	/**
+	 * @return The number of slots in the block holding the given number of incident edges
+	 */
+	static int getBlockLength(int degree)
+	{
+		return 1 << getBlockSize(degree);
+	}
+
+	private static int getBlockSize(int degree)
+	{
+		int size = INITIAL_BLOCK_SIZE;
+		while (1 << size < degree)
+			size++;
+		return size;
+	}
+
+	/**
+	 * @return The start of a block of 1 << size slots in the pool, reusing a free one if there is one
+	 */
+	private int allocateBlock(int size)
+	{
+		int start = freeBlocks[size];
+		if (start != -1)
+		{
+			freeBlocks[size] = pool[start];
+			return start;
+		}
+
+		int length = 1 << size;
+		if (poolSize + length > pool.length)
+			pool = Arrays.copyOf(pool, Math.max(pool.length + pool.length / 2, poolSize + length));
+
+		start = poolSize;
+		poolSize += length;
+		return start;
+	}
+
+	private void freeBlock(int start, int size)
+	{
+		pool[start] = freeBlocks[size];
+		freeBlocks[size] = start;
+	}
+
+	/**
+	 * @return The coordinates rounded to the nearest multiple of epsilon, packed together
+	 */
+	private long quantize(double x, double y)
+	{
+		long qx = Math.round(x * inverseEpsilon);
+		long qy = Math.round(y * inverseEpsilon);
+		return (qx << 32) | (qy & 0xFFFFFFFFL);
+	}
+
+	private void grow()
+	{
+		int capacity = xs.length * 2;
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		types = Arrays.copyOf(types, capacity);
+		blockStarts = Arrays.copyOf(blockStarts, capacity);
+		blockSizes = Arrays.copyOf(blockSizes, capacity);
+		degrees = Arrays.copyOf(degrees, capacity);
+	}
+}
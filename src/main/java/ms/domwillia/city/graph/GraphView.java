@@ -0,0 +1,49 @@
+package ms.domwillia.city.graph;
+
+import ms.domwillia.city.RoadType;
+
+/**
+ * Read-only access to a road network. Vertices and undirected edges are identified by dense ids,
+ * from 0 to {@link #getVertexCount()} and {@link #getEdgeCount()} respectively. Vertices and edges
+ * are only ever added, so an id stays valid for the life of the graph
+ */
+public interface GraphView
+{
+	int getWidth();
+
+	int getHeight();
+
+	int getVertexCount();
+
+	double getX(int id);
+
+	double getY(int id);
+
+	RoadType getType(int id);
+
+	/**
+	 * @return The number of edges touching the given vertex
+	 */
+	int getDegree(int id);
+
+	/**
+	 * @return The id of the given vertex's index'th incident edge
+	 */
+	int getIncidentEdge(int id, int index);
+
+	/**
+	 * @return The vertex at the other end of the given vertex's index'th incident edge
+	 */
+	int getNeighbour(int id, int index);
+
+	int getEdgeCount();
+
+	int getEdgeSource(int edge);
+
+	int getEdgeTarget(int edge);
+
+	/**
+	 * @return {@link RoadType#MAIN} if both ends are main roads, otherwise {@link RoadType#MINOR}
+	 */
+	RoadType getEdgeType(int edge);
+}
@@ -0,0 +1,89 @@
+package ms.domwillia.city.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to non-negative int values, with linear probing
+ */
+class LongIntHashMap
+{
+	private static final int MISSING = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	LongIntHashMap(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(8, expectedSize) - 1) << 2;
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(values, MISSING);
+	}
+
+	/**
+	 * @return The value for the given key, or -1 if there is none
+	 */
+	int get(long key)
+	{
+		return values[findSlot(key)];
+	}
+
+	void put(long key, int value)
+	{
+		if (value < 0)
+			throw new IllegalArgumentException("Negative value " + value);
+
+		int slot = findSlot(key);
+		if (values[slot] == MISSING)
+		{
+			keys[slot] = key;
+			if (++size * 2 > keys.length)
+			{
+				values[slot] = value;
+				rehash();
+				return;
+			}
+		}
+
+		values[slot] = value;
+	}
+
+	private int findSlot(long key)
+	{
+		int slot = hash(key) & mask;
+		while (values[slot] != MISSING && keys[slot] != key)
+			slot = (slot + 1) & mask;
+
+		return slot;
+	}
+
+	private static int hash(long key)
+	{
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+	private void rehash()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		mask = keys.length - 1;
+		Arrays.fill(values, MISSING);
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldValues[i] != MISSING)
+			{
+				int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package ms.domwillia.city.graph;
+
+import ms.domwillia.city.RoadType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a graph written by {@link GraphFile#write}, backed directly by a memory mapping of
+ * the file. Opening only reads the header, and pages are loaded by the OS as they are touched.
+ * Nothing is mutable, so instances can be shared between threads freely
+ */
+public final class MappedGraph implements GraphView
+{
+	private static final RoadType[] ROAD_TYPES = RoadType.values();
+
+	private final ByteBuffer buffer;
+
+	private final int width, height;
+	private final int vertexCount, edgeCount;
+
+	private final int coordinates;
+	private final int vertexTypes;
+	private final int edges;
+	private final int edgeTypes;
+	private final int adjacencyOffsets;
+	private final int adjacency;
+
+	private MappedGraph(ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer;
+
+		if (buffer.capacity() < GraphFile.HEADER_SIZE || buffer.getInt(0) != GraphFile.MAGIC)
+			throw new IOException("Not a graph file");
+
+		int version = buffer.getInt(4);
+		if (version != GraphFile.VERSION)
+			throw new IOException("Unsupported graph file version " + version);
+
+		width = buffer.getInt(8);
+		height = buffer.getInt(12);
+		vertexCount = buffer.getInt(16);
+		edgeCount = buffer.getInt(20);
+		if (vertexCount < 0 || edgeCount < 0)
+			throw new IOException("Corrupt graph file header");
+
+		long[] expected = GraphFile.blockOffsets(vertexCount, edgeCount);
+		for (int i = 0; i < GraphFile.BLOCK_COUNT; i++)
+			if (buffer.getLong(24 + i * Long.BYTES) != expected[i])
+				throw new IOException("Corrupt graph file header");
+
+		if (buffer.capacity() < GraphFile.fileSize(vertexCount, edgeCount))
+			throw new IOException("Truncated graph file");
+
+		coordinates = (int) expected[GraphFile.COORDINATES];
+		vertexTypes = (int) expected[GraphFile.VERTEX_TYPES];
+		edges = (int) expected[GraphFile.EDGES];
+		edgeTypes = (int) expected[GraphFile.EDGE_TYPES];
+		adjacencyOffsets = (int) expected[GraphFile.ADJACENCY_OFFSETS];
+		adjacency = (int) expected[GraphFile.ADJACENCY];
+	}
+
+	/**
+	 * Maps the given file. The mapping stays valid after this returns, until the graph is garbage collected
+	 *
+	 * @throws IOException If the file can't be read, isn't a graph file or is too big to map
+	 */
+	public static MappedGraph open(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Graph file is too big to map: " + size + " bytes");
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+			return new MappedGraph(buffer);
+		}
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	@Override
+	public int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	@Override
+	public double getX(int id)
+	{
+		return buffer.getDouble(coordinates + id * 2 * Double.BYTES);
+	}
+
+	@Override
+	public double getY(int id)
+	{
+		return buffer.getDouble(coordinates + id * 2 * Double.BYTES + Double.BYTES);
+	}
+
+	@Override
+	public RoadType getType(int id)
+	{
+		return ROAD_TYPES[buffer.get(vertexTypes + id)];
+	}
+
+	@Override
+	public int getDegree(int id)
+	{
+		return buffer.getInt(adjacencyOffsets + (id + 1) * Integer.BYTES) - buffer.getInt(adjacencyOffsets + id * Integer.BYTES);
+	}
+
+	@Override
+	public int getIncidentEdge(int id, int index)
+	{
+		int start = buffer.getInt(adjacencyOffsets + id * Integer.BYTES);
+		return buffer.getInt(adjacency + (start + index) * Integer.BYTES);
+	}
+
+	@Override
+	public int getNeighbour(int id, int index)
+	{
+		int edge = getIncidentEdge(id, index);
+		int source = getEdgeSource(edge);
+		return source == id ? getEdgeTarget(edge) : source;
+	}
+
+	@Override
+	public int getEdgeCount()
+	{
+		return edgeCount;
+	}
+
+	@Override
+	public int getEdgeSource(int edge)
+	{
+		return buffer.getInt(edges + edge * 2 * Integer.BYTES);
+	}
+
+	@Override
+	public int getEdgeTarget(int edge)
+	{
+		return buffer.getInt(edges + edge * 2 * Integer.BYTES + Integer.BYTES);
+	}
+
+	@Override
+	public RoadType getEdgeType(int edge)
+	{
+		return ROAD_TYPES[buffer.get(edgeTypes + edge)];
+	}
+}
@@ -0,0 +1,153 @@
+package ms.domwillia.city.graph;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of buckets over the graph's bounds, for finding nearby vertices.
+ * Each cell is a linked list of vertex ids threaded through primitive arrays, so
+ * neither insertion (amortised) nor querying allocates
+ */
+class SpatialGrid
+{
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final GraphStorage storage;
+	private final double originX, originY;
+	private final double cellSize;
+	private final int cols, rows;
+
+	// first vertex in each cell, or -1
+	private final int[] heads;
+
+	// next vertex in the same cell, or -1
+	private int[] next;
+
+	SpatialGrid(GraphStorage storage, int originX, int originY, int width, int height, double cellSize, int capacity)
+	{
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("Invalid cell size " + cellSize);
+
+		this.storage = storage;
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize;
+		this.cols = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		this.heads = new int[cols * rows];
+		Arrays.fill(heads, -1);
+
+		capacity = Math.max(INITIAL_CAPACITY, capacity);
+		this.next = new int[capacity];
+	}
+
+	/**
+	 * Replaces the contents of the grid with every vertex currently in the storage
+	 */
+	void load()
+	{
+		int count = storage.getVertexCount();
+		if (count > next.length)
+			next = new int[count];
+
+		Arrays.fill(heads, -1);
+
+		// link in reverse so each cell lists its vertices in id order
+		for (int id = count - 1; id >= 0; id--)
+		{
+			int cell = cellIndex(column(storage.getX(id)), row(storage.getY(id)));
+			next[id] = heads[cell];
+			heads[cell] = id;
+		}
+	}
+
+	void insert(int id)
+	{
+		if (id >= next.length)
+			next = Arrays.copyOf(next, Math.max(id + 1, next.length * 2));
+
+		int cell = cellIndex(column(storage.getX(id)), row(storage.getY(id)));
+		next[id] = heads[cell];
+		heads[cell] = id;
+	}
+
+	/**
+	 * @return The id of the closest vertex within the given radius, or -1 if there are none
+	 */
+	int closest(double x, double y, double radius, int exclude)
+	{
+		int minCol = column(x - radius);
+		int maxCol = column(x + radius);
+		int minRow = row(y - radius);
+		int maxRow = row(y + radius);
+
+		double bestDistance = radius * radius;
+		int best = -1;
+
+		for (int r = minRow; r <= maxRow; r++)
+		{
+			for (int c = minCol; c <= maxCol; c++)
+			{
+				for (int id = heads[cellIndex(c, r)]; id != -1; id = next[id])
+				{
+					if (id == exclude)
+						continue;
+
+					double dx = storage.getX(id) - x;
+					double dy = storage.getY(id) - y;
+					double distance = dx * dx + dy * dy;
+					if (distance <= bestDistance)
+					{
+						bestDistance = distance;
+						best = id;
+					}
+				}
+			}
+		}
+
+		return best;
+	}
+
+	void forEachWithin(double x, double y, double radius, VertexVisitor visitor)
+	{
+		int minCol = column(x - radius);
+		int maxCol = column(x + radius);
+		int minRow = row(y - radius);
+		int maxRow = row(y + radius);
+
+		double radiusSq = radius * radius;
+
+		for (int r = minRow; r <= maxRow; r++)
+		{
+			for (int c = minCol; c <= maxCol; c++)
+			{
+				for (int id = heads[cellIndex(c, r)]; id != -1; id = next[id])
+				{
+					double dx = storage.getX(id) - x;
+					double dy = storage.getY(id) - y;
+					if (dx * dx + dy * dy <= radiusSq)
+						visitor.visit(id, storage.getX(id), storage.getY(id));
+				}
+			}
+		}
+	}
+
+	private int column(double x)
+	{
+		return clamp((int) Math.floor((x - originX) / cellSize), cols);
+	}
+
+	private int row(double y)
+	{
+		return clamp((int) Math.floor((y - originY) / cellSize), rows);
+	}
+
+	private int cellIndex(int col, int row)
+	{
+		return row * cols + col;
+	}
+
+	private static int clamp(int i, int count)
+	{
+		return i < 0 ? 0 : (i >= count ? count - 1 : i);
+	}
+}
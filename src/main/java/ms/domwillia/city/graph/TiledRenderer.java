@@ -0,0 +1,205 @@
+package ms.domwillia.city.graph;
+
+import ms.domwillia.city.Config;
+import ms.domwillia.city.RoadType;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Draws a graph's vertices and edges into an image split into square tiles, which are drawn in parallel.
+ * Each primitive is binned into every tile its bounds touch, and each tile is drawn through a
+ * {@link BufferedImage#getSubimage} of the shared image, which clips it to the tile. Tiles are offset by
+ * whole pixels and draw their primitives in the same order, so the result matches drawing the whole
+ * image on a single thread: vertices, then minor roads, then main roads
+ */
+class TiledRenderer
+{
+	private static final int TILE_SIZE = 256;
+
+	private final GraphStorage storage;
+	private final int originX, originY;
+	private final double scale;
+
+	// resolved once, rather than for every primitive on every tile
+	private final Color vertexColour;
+	private final int vertexRadius;
+	private final Color mainColour, minorColour;
+	private final Stroke mainStroke, minorStroke;
+
+	// how far a primitive can reach past its position, in pixels
+	private final int padding;
+
+	private int tilesX, tilesY;
+	private int[][] tileVertices, tileEdges;
+	private int[] tileVertexCounts, tileEdgeCounts;
+
+	TiledRenderer(GraphStorage storage, int originX, int originY, double scale)
+	{
+		this.storage = storage;
+		this.originX = originX;
+		this.originY = originY;
+		this.scale = scale;
+
+		vertexColour = Config.getColour(Config.Key.VERTEX_RENDER_COLOUR);
+		vertexRadius = Config.getInt(Config.Key.VERTEX_RENDER_RADIUS);
+		mainColour = Config.getColour(Config.Key.ROAD_MAIN_RENDER_COLOUR);
+		minorColour = Config.getColour(Config.Key.ROAD_MINOR_RENDER_COLOUR);
+		int mainThickness = Config.getInt(Config.Key.ROAD_MAIN_RENDER_THICKNESS);
+		int minorThickness = Config.getInt(Config.Key.ROAD_MINOR_RENDER_THICKNESS);
+		mainStroke = new BasicStroke(mainThickness);
+		minorStroke = new BasicStroke(minorThickness);
+
+		int reach = Math.max(vertexRadius, Math.max(mainThickness, minorThickness));
+		padding = (int) Math.ceil(reach * scale) + 2;
+	}
+
+	void draw(BufferedImage image)
+	{
+		tilesX = (image.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (image.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+		bin();
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int ty = 0; ty < tilesY; ty++)
+		{
+			for (int tx = 0; tx < tilesX; tx++)
+			{
+				int tile = ty * tilesX + tx;
+				if (tileVertexCounts[tile] == 0 && tileEdgeCounts[tile] == 0)
+					continue;
+
+				int x = tx * TILE_SIZE;
+				int y = ty * TILE_SIZE;
+				int w = Math.min(TILE_SIZE, image.getWidth() - x);
+				int h = Math.min(TILE_SIZE, image.getHeight() - y);
+				tasks.add(() ->
+				{
+					drawTile(image.getSubimage(x, y, w, h), x, y, tile);
+					return null;
+				});
+			}
+		}
+
+		Graph.runAll(tasks, "render tiles");
+	}
+
+	private void bin()
+	{
+		int tileCount = tilesX * tilesY;
+		tileVertices = new int[tileCount][];
+		tileEdges = new int[tileCount][];
+		tileVertexCounts = new int[tileCount];
+		tileEdgeCounts = new int[tileCount];
+
+		for (int id = 0; id < storage.getVertexCount(); id++)
+		{
+			double x = storage.getX(id);
+			double y = storage.getY(id);
+			int[] tiles = tilesCovering(x, y, x, y);
+			for (int tile : tiles)
+				add(tileVertices, tileVertexCounts, tile, id);
+		}
+
+		for (int e = 0; e < storage.getEdgeCount(); e++)
+		{
+			int a = storage.getEdgeSource(e);
+			int b = storage.getEdgeTarget(e);
+			int[] tiles = tilesCovering(storage.getX(a), storage.getY(a), storage.getX(b), storage.getY(b));
+			for (int tile : tiles)
+				add(tileEdges, tileEdgeCounts, tile, e);
+		}
+	}
+
+	/**
+	 * @return The tiles touched by the bounds of the given world positions, padded to cover strokes
+	 */
+	private int[] tilesCovering(double x1, double y1, double x2, double y2)
+	{
+		int minX = toTile(Math.floor((Math.min(x1, x2) - originX) * scale) - padding, tilesX);
+		int maxX = toTile(Math.ceil((Math.max(x1, x2) - originX) * scale) + padding, tilesX);
+		int minY = toTile(Math.floor((Math.min(y1, y2) - originY) * scale) - padding, tilesY);
+		int maxY = toTile(Math.ceil((Math.max(y1, y2) - originY) * scale) + padding, tilesY);
+
+		int[] tiles = new int[(maxX - minX + 1) * (maxY - minY + 1)];
+		int i = 0;
+		for (int ty = minY; ty <= maxY; ty++)
+			for (int tx = minX; tx <= maxX; tx++)
+				tiles[i++] = ty * tilesX + tx;
+		return tiles;
+	}
+
+	private static int toTile(double pixel, int tiles)
+	{
+		return (int) Math.max(0, Math.min(tiles - 1, Math.floor(pixel / TILE_SIZE)));
+	}
+
+	private static void add(int[][] lists, int[] counts, int tile, int id)
+	{
+		int[] list = lists[tile];
+		if (list == null)
+			list = lists[tile] = new int[16];
+		else if (counts[tile] == list.length)
+			list = lists[tile] = Arrays.copyOf(list, list.length * 2);
+
+		list[counts[tile]++] = id;
+	}
+
+	private void drawTile(BufferedImage tileImage, int tileX, int tileY, int tile)
+	{
+		Graphics2D g = tileImage.createGraphics();
+		try
+		{
+			g.translate(-tileX, -tileY);
+			if (scale != 1.0)
+				g.scale(scale, scale);
+			g.translate(-originX, -originY);
+
+			// vertices
+			g.setColor(vertexColour);
+			for (int i = 0; i < tileVertexCounts[tile]; i++)
+			{
+				int id = tileVertices[tile][i];
+				drawOval(g, storage.getX(id), storage.getY(id), vertexRadius);
+			}
+
+			// edges, a pass per road style so the colour and stroke are only set once each. Main roads
+			// go on top
+			g.setColor(minorColour);
+			g.setStroke(minorStroke);
+			drawEdges(g, tile, RoadType.MINOR);
+			g.setColor(mainColour);
+			g.setStroke(mainStroke);
+			drawEdges(g, tile, RoadType.MAIN);
+		} finally
+		{
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Draws each edge as its own line, as a line rasterises the same however the tile clips it
+	 */
+	private void drawEdges(Graphics2D g, int tile, RoadType type)
+	{
+		for (int i = 0; i < tileEdgeCounts[tile]; i++)
+		{
+			int e = tileEdges[tile][i];
+			if (storage.getEdgeType(e) != type)
+				continue;
+
+			int a = storage.getEdgeSource(e);
+			int b = storage.getEdgeTarget(e);
+			g.drawLine((int) storage.getX(a), (int) storage.getY(a), (int) storage.getX(b), (int) storage.getY(b));
+		}
+	}
+
+	private static void drawOval(Graphics2D g, double x, double y, int radius)
+	{
+		g.fillOval((int) x - radius / 2, (int) (y - radius / 2), radius, radius);
+	}
+}
@@ -6,18 +6,25 @@ import java.awt.geom.Point2D;
 
 public class Vertex
 {
+	private int id;
 	private Point2D.Double pos;
 	private RoadType type;
 
-	public Vertex(Point2D.Double pos, RoadType type)
+	public Vertex(int id, Point2D.Double pos, RoadType type)
 	{
+		this.id = id;
 		this.pos = pos;
 		this.type = type;
 	}
 
-	public Vertex(double x, double y, RoadType type)
+	public Vertex(int id, double x, double y, RoadType type)
 	{
-		this(new Point2D.Double(x, y), type);
+		this(id, new Point2D.Double(x, y), type);
+	}
+
+	public int getId()
+	{
+		return id;
 	}
 
 	public RoadType getType()
@@ -52,7 +59,8 @@ public class Vertex
 	public String toString()
 	{
 		return "Vertex{" +
-			"pos=" + pos +
+			"id=" + id +
+			", pos=" + pos +
 			", type=" + type +
 			'}';
 	}
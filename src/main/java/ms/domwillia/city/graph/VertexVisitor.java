@@ -0,0 +1,7 @@
+package ms.domwillia.city.graph;
+
+@FunctionalInterface
+public interface VertexVisitor
+{
+	void visit(int id, double x, double y);
+}
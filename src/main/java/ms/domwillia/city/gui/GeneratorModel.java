@@ -1,31 +1,43 @@
 package ms.domwillia.city.gui;
 
-import ms.domwillia.city.Config;
-import ms.domwillia.city.generator.Density;
-import ms.domwillia.city.generator.Generator;
+import ms.domwillia.city.generator.GenerationCache;
 import ms.domwillia.city.graph.Graph;
 
 import javax.swing.*;
+import java.awt.image.BufferedImage;
 import java.util.Observable;
 
 public class GeneratorModel extends Observable
 {
-	private Generator generator;
+	private static final long CACHE_BYTES = 512L * 1024 * 1024;
+
+	private final GenerationCache cache = new GenerationCache(CACHE_BYTES, true, null);
+
+	private long seed;
+	private Graph graph;
 
 	public GeneratorModel()
 	{
 	}
 
+	/**
+	 * Generates a city from a new seed
+	 */
 	public void generate()
+	{
+		seed = System.nanoTime();
+		regenerate();
+	}
+
+	/**
+	 * Generates the city for the current seed again with the current settings, reusing a cached result
+	 * if these settings have been seen before
+	 */
+	public void regenerate()
 	{
 		try
 		{
-			Density.reseed();
-			generator = new Generator(new Graph(
-				Config.getInt(Config.Key.WORLD_WIDTH),
-				Config.getInt(Config.Key.WORLD_HEIGHT))
-			);
-			generator.generate();
+			graph = cache.getGraph(seed);
 		} catch (RuntimeException e)
 		{
 			JOptionPane.showMessageDialog(null,  e.getMessage(), "Error", JOptionPane.WARNING_MESSAGE);
@@ -38,6 +50,14 @@ public class GeneratorModel extends Observable
 
 	public Graph getGraph()
 	{
-		return generator.getGraph();
+		return graph;
+	}
+
+	/**
+	 * @return The render of the current graph, cached along with it
+	 */
+	public BufferedImage getRender()
+	{
+		return cache.getRender(seed);
 	}
 }
@@ -107,7 +107,7 @@ class ConfigPanel extends JPanel
 				{
 					if (keyEvent.getKeyCode() == KeyEvent.VK_ENTER)
 					{
-						model.generate();
+						model.regenerate();
 					}
 				}
 			});
@@ -47,8 +47,7 @@ class RenderPanel extends JPanel implements Observer
 	@Override
 	public void update(Observable o, Object arg)
 	{
-		Graph graph = model.getGraph();
-		BufferedImage render = graph.render();
+		BufferedImage render = model.getRender();
 
 		image.setText(null);
 		image.setIcon(new ImageIcon(render));